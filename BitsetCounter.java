@@ -0,0 +1,144 @@
+/**
+* Counts the supports of several itemsets at once in vertical (bitset) form:
+* the number of bits set in the AND of a prefix bitset with each of several
+* other bitsets, without building the intersections. The words are taken in
+* blocks small enough to stay in the L1 cache, and within a block every
+* candidate is counted against the same words of the prefix, four candidates
+* at a time, so each word of the prefix is loaded once per four candidates
+* instead of once per candidate.
+*
+* The default kernel is plain Java, whose Long.bitCount compiles to a popcnt
+* instruction. With create(true), the kernel of VectorBitsetCounter is used
+* instead, which ANDs and counts a whole vector register of words at a time
+* with the incubating Vector API. That class is loaded by name, so the rest
+* of the program neither needs it compiled nor needs the jdk.incubator.vector
+* module, and the plain kernel is used whenever it cannot be loaded.
+*/
+public abstract class BitsetCounter {
+    // 512 words (4 KB) of the prefix and of four candidates fit in the L1
+    // cache together.
+    private static final int BLOCK_WORDS = 512;
+
+
+    /**
+    * Returns the vector kernel if simd is true and it can be loaded, and the
+    * plain kernel otherwise.
+    */
+    public static BitsetCounter create(boolean simd) {
+        BitsetCounter vectorCounter = simd ? loadVectorCounter() : null;
+        return vectorCounter != null ? vectorCounter
+                                     : new ScalarBitsetCounter();
+    }
+
+
+    /**
+    * Returns whether the vector kernel can be loaded, i.e. whether
+    * create(true) returns it.
+    */
+    public static boolean isVectorAvailable() {
+        return loadVectorCounter() != null;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns a short description of the kernel, such as "scalar".
+    */
+    public abstract String getName();
+
+
+    /**
+    * Sets counts[j], for every j below n, to the number of bits set in both
+    * prefix and others[j]. Every array in others must be as long as prefix.
+    */
+    public void countIntersections(long[] prefix, long[][] others, int n,
+                                   int[] counts) {
+        int[] sums = new int[4];
+        for (int j = 0; j < n; j++) {
+            counts[j] = 0;
+        }
+        for (int from = 0; from < prefix.length; from += BLOCK_WORDS) {
+            int to = Math.min(prefix.length, from + BLOCK_WORDS);
+            for (int j = 0; j < n; j += 4) {
+                // Missing candidates of the last group are counted against
+                // the prefix itself, and their sums dropped.
+                sums[0] = sums[1] = sums[2] = sums[3] = 0;
+                countBlock(prefix, others[j],
+                           j + 1 < n ? others[j + 1] : prefix,
+                           j + 2 < n ? others[j + 2] : prefix,
+                           j + 3 < n ? others[j + 3] : prefix,
+                           from, to, sums);
+                for (int c = 0; c < 4 && j + c < n; c++) {
+                    counts[j + c] += sums[c];
+                }
+            }
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Returns a new VectorBitsetCounter, or null if it cannot be loaded.
+    */
+    private static BitsetCounter loadVectorCounter() {
+        // Relative to this class, as the benchmarks compile it in a package.
+        String pkg = BitsetCounter.class.getPackageName();
+        String name = pkg.isEmpty() ? "VectorBitsetCounter"
+                                    : pkg + ".VectorBitsetCounter";
+        try {
+            return (BitsetCounter)Class.forName(name)
+                .getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            // Not compiled.
+        } catch (LinkageError e) {
+            // Compiled, but run without --add-modules jdk.incubator.vector.
+        }
+        return null;
+    }
+
+
+    /*
+    * Adds to sums[c] the number of bits set in both prefix and the c-th of
+    * other0..other3, over the words from index from up to (but not
+    * including) index to.
+    */
+    protected abstract void countBlock(long[] prefix, long[] other0,
+                                       long[] other1, long[] other2,
+                                       long[] other3, int from, int to,
+                                       int[] sums);
+}
+
+
+/**
+* The plain Java kernel of BitsetCounter.
+*/
+class ScalarBitsetCounter extends BitsetCounter {
+    public String getName() {
+        return "scalar";
+    }
+
+
+    protected void countBlock(long[] prefix, long[] other0, long[] other1,
+                              long[] other2, long[] other3, int from, int to,
+                              int[] sums) {
+        int sum0 = 0;
+        int sum1 = 0;
+        int sum2 = 0;
+        int sum3 = 0;
+        for (int w = from; w < to; w++) {
+            long word = prefix[w];
+            sum0 += Long.bitCount(word & other0[w]);
+            sum1 += Long.bitCount(word & other1[w]);
+            sum2 += Long.bitCount(word & other2[w]);
+            sum3 += Long.bitCount(word & other3[w]);
+        }
+        sums[0] += sum0;
+        sums[1] += sum1;
+        sums[2] += sum2;
+        sums[3] += sum3;
+    }
+}
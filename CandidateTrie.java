@@ -0,0 +1,167 @@
+import java.util.*;
+
+/**
+* A prefix trie over the candidate k-itemsets of one apriori pass, used in
+* place of the hash tree of section 2.1.2 of the paper to implement
+* subset(C_k, t). A transaction walks down only the branches whose items it
+* contains, so it never looks at candidates it cannot contain, and the count of
+* every candidate it reaches is incremented in place.
+*
+* The trie is stored in flat arrays. Nodes are numbered level by level, and the
+* children of a node are a contiguous range of the next level, sorted by item.
+* Leaves store the index of their candidate in place of a child range.
+*/
+public class CandidateTrie {
+    private int k;
+    private int numCandidates;
+    private int[] nodeItem;
+    // Children of node n are nodes childStart[n] to childEnd[n] - 1 on the
+    // next level. For leaves, childStart[n] is the candidate index.
+    private int[] childStart;
+    private int[] childEnd;
+    // Node on the first level for every item id, or -1.
+    private int[] rootChild;
+
+
+    /**
+    * Builds the trie. candidates must all have the same length, be sorted
+    * lexicographically and be free of duplicates, which is how aprioriGen
+    * produces them. maxItem is one more than the largest item id.
+    */
+    public CandidateTrie(List<int[]> candidates, int maxItem) {
+        numCandidates = candidates.size();
+        k = numCandidates == 0 ? 0 : candidates.get(0).length;
+        rootChild = new int[maxItem];
+        Arrays.fill(rootChild, -1);
+
+        // Count the nodes on every level: a candidate opens a new node on
+        // level d when it differs from the previous candidate in its first
+        // d + 1 items.
+        int numNodes = 0;
+        int[] firstDifference = new int[numCandidates];
+        for (int c = 0; c < numCandidates; c++) {
+            int[] candidate = candidates.get(c);
+            int d = 0;
+            if (c > 0) {
+                int[] previous = candidates.get(c - 1);
+                while (d < k && candidate[d] == previous[d]) {
+                    d++;
+                }
+            }
+            firstDifference[c] = d;
+            numNodes += k - d;
+        }
+        nodeItem = new int[numNodes];
+        childStart = new int[numNodes];
+        childEnd = new int[numNodes];
+
+        // Nodes are laid out level by level, and levelNext[d] is the next free
+        // node on level d. lastNode[d] is the node opened last on level d.
+        int[] levelNext = new int[k + 1];
+        int[] lastNode = new int[k];
+        for (int c = 0; c < numCandidates; c++) {
+            for (int d = firstDifference[c]; d < k; d++) {
+                levelNext[d + 1]++;
+            }
+        }
+        for (int d = 1; d <= k; d++) {
+            levelNext[d] += levelNext[d - 1];
+        }
+        for (int c = 0; c < numCandidates; c++) {
+            int[] candidate = candidates.get(c);
+            for (int d = firstDifference[c]; d < k; d++) {
+                int node = levelNext[d]++;
+                nodeItem[node] = candidate[d];
+                lastNode[d] = node;
+                if (d == 0) {
+                    rootChild[candidate[d]] = node;
+                } else {
+                    childEnd[lastNode[d - 1]] = node + 1;
+                }
+                if (d == k - 1) {
+                    childStart[node] = c;
+                } else {
+                    // The first child of this node is the next node to be
+                    // opened on level d + 1.
+                    childStart[node] = levelNext[d + 1];
+                }
+            }
+        }
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the number of candidates in the trie.
+    */
+    public int size() {
+        return numCandidates;
+    }
+
+
+    /**
+    * Adds weight to counts[c] for every candidate c contained in the
+    * transaction items[start..end), which must be sorted.
+    */
+    public void count(int[] items, int start, int end, int weight,
+                      int[] counts) {
+        count(items, start, end, weight, counts, 0);
+    }
+
+
+    /**
+    * Same as count(items, start, end, weight, counts), with the count of
+    * candidate c at counts[offset + c], so that several tries can share one
+    * array.
+    */
+    public void count(int[] items, int start, int end, int weight,
+                      int[] counts, int offset) {
+        if (k == 0) {
+            return;
+        }
+        for (int i = start; i <= end - k; i++) {
+            int item = items[i];
+            if (item < rootChild.length && rootChild[item] >= 0) {
+                if (k == 1) {
+                    counts[offset + childStart[rootChild[item]]] += weight;
+                } else {
+                    int node = rootChild[item];
+                    countBelow(childStart[node], childEnd[node],
+                               items, i + 1, end, 2, weight, counts, offset);
+                }
+            }
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Matches the children firstChild..lastChild - 1, which sit on level
+    * depth, against the transaction items from position from on.
+    */
+    private void countBelow(int firstChild, int lastChild, int[] items,
+                            int from, int end, int depth, int weight,
+                            int[] counts, int offset) {
+        int child = firstChild;
+        for (int i = from; i <= end - (k - depth + 1) && child < lastChild;
+             i++) {
+            int item = items[i];
+            while (child < lastChild && nodeItem[child] < item) {
+                child++;
+            }
+            if (child < lastChild && nodeItem[child] == item) {
+                if (depth == k) {
+                    counts[offset + childStart[child]] += weight;
+                } else {
+                    countBelow(childStart[child], childEnd[child], items,
+                               i + 1, end, depth + 1, weight, counts, offset);
+                }
+                child++;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.*;
+
+/**
+* Mines the closed frequent itemsets (those with no superset of the same
+* support) with LCM (Uno, Kiyomi and Arimura, "LCM ver. 2: Efficient Mining
+* Algorithms for Frequent/Closed/Maximal Itemsets"), on the tid-sets of the
+* large items (see Dataset.verticalLayout).
+*
+* Every closed itemset is reached exactly once from the closed itemset that
+* it extends, through prefix-preserving closure extension: P is extended with
+* an item e above its core index, and the closure Q of P + e is only kept if
+* it adds no item below e. Non-closed itemsets are never visited, so there are
+* usually far fewer steps than in apriori or Eclat. The closed itemsets hold
+* the support of every frequent itemset, which is that of its smallest closed
+* superset.
+*
+* The maximal frequent itemsets (those with no frequent superset) are closed,
+* and are flagged on the way.
+*/
+public class ClosedItemsetMiner {
+    private int minCount;
+    private int[] items;
+    private TidSet[] tidSets;
+    private Map<Itemset, Integer> closedCounts =
+        new LinkedHashMap<Itemset, Integer>();
+    private Set<Itemset> maximalItemsets = new HashSet<Itemset>();
+
+
+    /**
+    * minCount is the count that itemsets of two or more items must reach.
+    */
+    public ClosedItemsetMiner(int minCount) {
+        this.minCount = minCount;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Mines the closed itemsets given the tid-sets of the large items (null
+    * for every other item) of a dataset of numTransactions stored baskets,
+    * and returns them with their counts.
+    */
+    public Map<Itemset, Integer> mine(TidSet[] itemTidSets,
+                                      int numTransactions) {
+        int numItems = 0;
+        items = new int[itemTidSets.length];
+        tidSets = new TidSet[itemTidSets.length];
+        for (int item = 0; item < itemTidSets.length; item++) {
+            if (itemTidSets[item] != null) {
+                items[numItems] = item;
+                tidSets[numItems] = itemTidSets[item];
+                numItems++;
+            }
+        }
+        items = Arrays.copyOf(items, numItems);
+        tidSets = Arrays.copyOf(tidSets, numItems);
+
+        // The closure of the empty itemset: the items of every basket. Its
+        // tid-set is that of any of them, or null (all baskets) if there are
+        // none, in which case it is not an itemset worth reporting.
+        boolean[] root = new boolean[numItems];
+        TidSet rootTidSet = null;
+        for (int i = 0; i < numItems; i++) {
+            if (tidSets[i].cardinality() == numTransactions) {
+                root[i] = true;
+                rootTidSet = tidSets[i];
+            }
+        }
+        if (rootTidSet != null) {
+            record(root, rootTidSet);
+        }
+        extend(root, rootTidSet, -1);
+        return closedCounts;
+    }
+
+
+    /**
+    * Returns whether itemset, one of the closed itemsets found by mine, is
+    * maximal.
+    */
+    public boolean isMaximal(Itemset itemset) {
+        return maximalItemsets.contains(itemset);
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Visits every closed itemset that extends the closed itemset whose items
+    * (as indexes into items) are flagged in itemset, and whose tid-set is
+    * tidSet (null for the closure of the empty itemset when that is empty),
+    * through an item above core.
+    */
+    private void extend(boolean[] itemset, TidSet tidSet, int core) {
+        for (int e = core + 1; e < items.length; e++) {
+            if (itemset[e]) {
+                continue;
+            }
+            TidSet extended =
+                tidSet == null ? tidSets[e] : tidSet.intersect(tidSets[e]);
+            if (extended.support() < minCount) {
+                continue;
+            }
+            // Closure of itemset + e, which must not add any item below e.
+            boolean[] closure = itemset.clone();
+            closure[e] = true;
+            boolean prefixPreserved = true;
+            for (int i = 0; i < items.length && prefixPreserved; i++) {
+                if (!closure[i] && contains(tidSets[i], extended)) {
+                    if (i < e) {
+                        prefixPreserved = false;
+                    }
+                    closure[i] = true;
+                }
+            }
+            if (!prefixPreserved) {
+                continue;
+            }
+            record(closure, extended);
+            extend(closure, extended, e);
+        }
+    }
+
+
+    /*
+    * Records a closed itemset, and whether it is maximal: no item can be
+    * added to it with the support staying frequent.
+    */
+    private void record(boolean[] itemset, TidSet tidSet) {
+        int size = 0;
+        for (boolean member : itemset) {
+            size += member ? 1 : 0;
+        }
+        int[] itemIds = new int[size];
+        int n = 0;
+        boolean maximal = true;
+        for (int i = 0; i < items.length; i++) {
+            if (itemset[i]) {
+                itemIds[n++] = items[i];
+            } else if (maximal &&
+                       tidSet.intersect(tidSets[i]).support() >= minCount) {
+                maximal = false;
+            }
+        }
+        Itemset closedItemset = new Itemset(itemIds);
+        closedCounts.put(closedItemset, tidSet.support());
+        if (maximal) {
+            maximalItemsets.add(closedItemset);
+        }
+    }
+
+
+    /*
+    * Returns whether every transaction of subset is in superset.
+    */
+    private static boolean contains(TidSet superset, TidSet subset) {
+        return superset.cardinality() >= subset.cardinality() &&
+               superset.intersect(subset).cardinality() ==
+                   subset.cardinality();
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+* The coordinator of the Count Distribution algorithm (Agrawal and Shafer,
+* "Parallel Mining of Association Rules"), used with LoadOptions.workers.
+* The file is cut into as many byte ranges as there are workers, and every
+* worker (see CountWorker) is a JVM of its own that loads the lines of one
+* range into a Dataset of its own. For every pass of apriori, the coordinator
+* sends the candidates to all workers, each counts them in its shard, and the
+* coordinator adds up their counts. The baskets never leave the workers, so
+* the coordinator only holds the dictionary, the candidates and the counts.
+*
+* Every worker encodes its shard with a dictionary of its own. The
+* coordinator merges these dictionaries in shard order, the way
+* CsvBasketReader merges the chunks of a file parsed in parallel, so items get
+* the same ids as when the whole file is read by one process. Candidates are
+* sent with these ids, and workers translate them to their own.
+*
+* Workers are started on this machine and connect back over the loopback
+* interface. They only need a socket to the coordinator and the path of the
+* file, so the same protocol works between machines that share the file.
+* Workers exit when their connection closes, which at the latest is when the
+* coordinator exits.
+*/
+public class CountDistribution {
+    // Commands from the coordinator to a worker.
+    static final byte COUNT_ITEMS = 1;
+    static final byte COUNT_CANDIDATES = 2;
+    // How often the coordinator checks whether workers that have not
+    // connected yet are still running.
+    private static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+
+    private List<Process> processes = new ArrayList<Process>();
+    // Connections to the workers, in shard order.
+    private DataInputStream[] inputs;
+    private DataOutputStream[] outputs;
+    private int storedSize = 0;
+    private long totalWeight = 0;
+    private MiningMetrics metrics;
+
+
+    /**
+    * Starts options.workers workers on datasetFilename, waits for each to
+    * load its shard, and merges their items into dictionary, which must be
+    * empty. Baskets scanned by the workers are added to metrics.
+    */
+    public CountDistribution(String datasetFilename, LoadOptions options,
+                             ItemDictionary dictionary, MiningMetrics metrics)
+            throws Exception {
+        this.metrics = metrics;
+        int workers = options.workers;
+        inputs = new DataInputStream[workers];
+        outputs = new DataOutputStream[workers];
+        ServerSocket server =
+            new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+        try {
+            startWorkers(server, workers);
+            acceptWorkers(server);
+        } catch (Exception e) {
+            stopWorkers();
+            throw e;
+        } finally {
+            server.close();
+        }
+
+        // Shards are assigned in the order the workers connected.
+        long fileSize = new File(datasetFilename).length();
+        for (int s = 0; s < workers; s++) {
+            DataOutputStream output = outputs[s];
+            output.writeUTF(datasetFilename);
+            output.writeLong(fileSize * s / workers);
+            output.writeLong(fileSize * (s + 1) / workers);
+            // Read back by CountWorker.readOptions.
+            output.writeBoolean(options.includeEmptyBaskets);
+            output.writeInt(options.weightColumn);
+            output.writeBoolean(options.collapseDuplicates);
+            output.writeBoolean(options.streaming);
+            output.writeUTF(options.spillDirectory == null
+                            ? "" : options.spillDirectory.getPath());
+            output.writeInt(options.threads);
+            output.flush();
+        }
+
+        // The items of every shard, by local id, are given global ids in
+        // shard order.
+        int[][] globalIds = new int[workers][];
+        try {
+            for (int s = 0; s < workers; s++) {
+                DataInputStream input = inputs[s];
+                if (!input.readBoolean()) {
+                    throw new Exception(input.readUTF());
+                }
+                storedSize += input.readInt();
+                totalWeight += input.readLong();
+                globalIds[s] = new int[input.readInt()];
+                for (int id = 0; id < globalIds[s].length; id++) {
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    globalIds[s][id] = dictionary.encode(bytes, 0,
+                                                         bytes.length);
+                }
+            }
+            for (int s = 0; s < workers; s++) {
+                DataOutputStream output = outputs[s];
+                output.writeInt(dictionary.size());
+                writeInts(output, globalIds[s]);
+                output.flush();
+            }
+        } catch (IOException e) {
+            stopWorkers();
+            throw new Exception("Error: a count worker failed while " +
+                                "loading its shard.", e);
+        } catch (Exception e) {
+            stopWorkers();
+            throw e;
+        }
+        if (totalWeight > Integer.MAX_VALUE) {
+            stopWorkers();
+            throw new Exception(
+                "Error: the total weight of the dataset is too large.");
+        }
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the number of baskets stored by all workers.
+    */
+    public int getStoredSize() {
+        return storedSize;
+    }
+
+
+    /**
+    * Returns the sum of the weights of the baskets of all workers.
+    */
+    public int getTotalWeight() {
+        return (int)totalWeight;
+    }
+
+
+    /**
+    * Returns the number of baskets (the sum of their weights) that contain
+    * each of the numItems items, indexed by global item id.
+    */
+    public int[] countItems(int numItems) {
+        return count(new byte[] {COUNT_ITEMS}, numItems);
+    }
+
+
+    /**
+    * Returns the number of baskets (the sum of their weights) that contain
+    * each candidate, indexed like candidates. The candidates must all have
+    * the same length, with their items sorted.
+    */
+    public int[] countCandidates(List<int[]> candidates) {
+        if (candidates.isEmpty()) {
+            return new int[0];
+        }
+        int k = candidates.get(0).length;
+        // The command is built once and sent to every worker.
+        ByteArrayOutputStream bytes =
+            new ByteArrayOutputStream(9 + 4 * k * candidates.size());
+        DataOutputStream command = new DataOutputStream(bytes);
+        try {
+            command.writeByte(COUNT_CANDIDATES);
+            command.writeInt(candidates.size());
+            command.writeInt(k);
+            for (int[] candidate : candidates) {
+                writeInts(command, candidate);
+            }
+            command.flush();
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream.
+            throw new UncheckedIOException(e);
+        }
+        return count(bytes.toByteArray(), candidates.size());
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Sends command to every worker, so that they all count at the same time,
+    * and returns the sums of the numCounts counts each of them answers with.
+    */
+    private int[] count(byte[] command, int numCounts) {
+        int[] counts = new int[numCounts];
+        int s = 0;
+        try {
+            for (s = 0; s < outputs.length; s++) {
+                outputs[s].write(command);
+                outputs[s].flush();
+            }
+            for (s = 0; s < inputs.length; s++) {
+                for (int c = 0; c < numCounts; c++) {
+                    counts[c] += inputs[s].readInt();
+                }
+            }
+        } catch (IOException e) {
+            stopWorkers();
+            throw new IllegalStateException(
+                "Error: lost the count worker of shard " + (s + 1) + " of " +
+                outputs.length + ".", e);
+        }
+        metrics.addTransactionsScanned(storedSize);
+        return counts;
+    }
+
+
+    /*
+    * Starts the worker processes, with the same Java and class path as this
+    * one, and tells them to connect to server.
+    */
+    private void startWorkers(ServerSocket server, int workers)
+            throws IOException {
+        String java = System.getProperty("java.home") + File.separator +
+                      "bin" + File.separator + "java";
+        for (int w = 0; w < workers; w++) {
+            ProcessBuilder builder = new ProcessBuilder(
+                java, "-cp", System.getProperty("java.class.path"),
+                CountWorker.class.getName(),
+                server.getInetAddress().getHostAddress(),
+                Integer.toString(server.getLocalPort()));
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processes.add(builder.start());
+        }
+    }
+
+
+    /*
+    * Accepts a connection from every worker, failing if one of them exits
+    * before connecting.
+    */
+    private void acceptWorkers(ServerSocket server) throws Exception {
+        server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+        int accepted = 0;
+        while (accepted < inputs.length) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketTimeoutException e) {
+                for (Process process : processes) {
+                    if (!process.isAlive()) {
+                        throw new Exception("Error: a count worker exited " +
+                                            "before connecting.");
+                    }
+                }
+                continue;
+            }
+            socket.setTcpNoDelay(true);
+            inputs[accepted] = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            outputs[accepted] = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            accepted++;
+        }
+    }
+
+
+    private void stopWorkers() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+
+    static void writeInts(DataOutputStream output, int[] values)
+            throws IOException {
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+}
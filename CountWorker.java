@@ -0,0 +1,186 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+* A worker of the Count Distribution algorithm (see CountDistribution): a
+* separate JVM that loads one shard of the file and counts candidates in it
+* for the coordinator. Started by the coordinator as
+*
+*     java CountWorker <host> <port>
+*
+* it connects to the coordinator, is told which byte range of which file to
+* load and how, sends back the items of its shard, and from then on answers
+* every command with the counts of its own baskets until the connection
+* closes.
+*/
+public class CountWorker {
+    private DataInputStream input;
+    private DataOutputStream output;
+    private Dataset dataset;
+    // Global id of every local item id, and local id of every global item
+    // id (-1 for items that are not in the shard).
+    private int[] globalIds;
+    private int[] localIds;
+
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java CountWorker <host> <port>");
+            System.exit(1);
+        }
+        try {
+            Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+            socket.setTcpNoDelay(true);
+            new CountWorker(socket).serve();
+        } catch (EOFException e) {
+            // The coordinator is done.
+        } catch (Exception e) {
+            System.err.println("Count worker: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    public CountWorker(Socket socket) throws IOException {
+        input = new DataInputStream(
+            new BufferedInputStream(socket.getInputStream()));
+        output = new DataOutputStream(
+            new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Loads the shard and answers commands until the coordinator closes the
+    * connection, which ends with an EOFException.
+    */
+    public void serve() throws IOException {
+        String datasetFilename = input.readUTF();
+        long from = input.readLong();
+        long to = input.readLong();
+        LoadOptions options = readOptions();
+        try {
+            dataset = new Dataset(datasetFilename, from, to, options);
+        } catch (Exception e) {
+            output.writeBoolean(false);
+            output.writeUTF(e.getMessage() == null ? e.toString()
+                                                   : e.getMessage());
+            output.flush();
+            return;
+        }
+        ItemDictionary dictionary = dataset.getDictionary();
+        output.writeBoolean(true);
+        output.writeInt(dataset.storedSize());
+        output.writeLong(dataset.size());
+        output.writeInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            byte[] bytes = dictionary.decodeBytes(id);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+        output.flush();
+
+        localIds = new int[input.readInt()];
+        Arrays.fill(localIds, -1);
+        globalIds = new int[dictionary.size()];
+        for (int id = 0; id < globalIds.length; id++) {
+            globalIds[id] = input.readInt();
+            localIds[globalIds[id]] = id;
+        }
+
+        while (true) {
+            byte command = input.readByte();
+            int[] counts;
+            if (command == CountDistribution.COUNT_ITEMS) {
+                counts = countItems();
+            } else if (command == CountDistribution.COUNT_CANDIDATES) {
+                counts = countCandidates();
+            } else {
+                throw new IOException("Error: unknown command " + command);
+            }
+            CountDistribution.writeInts(output, counts);
+            output.flush();
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Reads the options written by the constructor of CountDistribution.
+    */
+    private LoadOptions readOptions() throws IOException {
+        LoadOptions options = new LoadOptions(input.readBoolean());
+        options.weightColumn = input.readInt();
+        options.collapseDuplicates = input.readBoolean();
+        options.streaming = input.readBoolean();
+        String spillDirectory = input.readUTF();
+        if (!spillDirectory.isEmpty()) {
+            options.spillDirectory = new File(spillDirectory);
+        }
+        options.threads = input.readInt();
+        return options;
+    }
+
+
+    /*
+    * Returns the counts of the items of the shard, indexed by global id.
+    */
+    private int[] countItems() {
+        int[] localCounts = dataset.countItems();
+        int[] counts = new int[localIds.length];
+        for (int id = 0; id < localCounts.length; id++) {
+            counts[globalIds[id]] = localCounts[id];
+        }
+        return counts;
+    }
+
+
+    /*
+    * Reads candidates in global ids and returns their counts in the shard,
+    * indexed like them. Candidates with an item that is not in the shard
+    * are not counted; the others are translated to local ids, which changes
+    * their order, and sorted again for the trie.
+    */
+    private int[] countCandidates() throws IOException {
+        int numCandidates = input.readInt();
+        int k = input.readInt();
+        // Translated candidates, each followed by its index.
+        List<int[]> translated = new ArrayList<int[]>();
+        for (int c = 0; c < numCandidates; c++) {
+            int[] candidate = new int[k + 1];
+            boolean inShard = true;
+            for (int i = 0; i < k; i++) {
+                int item = input.readInt();
+                candidate[i] = localIds[item];
+                inShard &= candidate[i] >= 0;
+            }
+            if (inShard) {
+                Arrays.sort(candidate, 0, k);
+                candidate[k] = c;
+                translated.add(candidate);
+            }
+        }
+        Collections.sort(translated, new Comparator<int[]>() {
+            public int compare(int[] candidate1, int[] candidate2) {
+                return Arrays.compare(candidate1, candidate2);
+            }
+        });
+        List<int[]> localCandidates = new ArrayList<int[]>();
+        for (int[] candidate : translated) {
+            localCandidates.add(Arrays.copyOf(candidate, k));
+        }
+        int[] localCounts = dataset.countCandidates(
+            new CandidateTrie(localCandidates, globalIds.length));
+
+        int[] counts = new int[numCandidates];
+        for (int c = 0; c < translated.size(); c++) {
+            counts[translated.get(c)[k]] = localCounts[c];
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,396 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Reads the baskets of a CSV file, one basket per line and one item per field.
+* The file is read through a FileChannel into a large byte buffer and split
+* into fields by hand, and every field is interned into an ItemDictionary
+* straight from the buffer, so no String is created for an item that has been
+* seen before.
+*
+* Fields are split on the commas that are followed by an even number of
+* quotes up to the end of the line, which is what the regular expression
+* ",(?=([^\"]*\"[^\"]*\")*[^\"]*$)" that we used before does. Quotes are kept
+* as part of the items and empty fields are skipped. If a weight column is
+* given, that field holds the weight of the line (an integer, 1 if it is empty
+* or missing) and is not an item.
+*
+* Big files can be parsed in parallel: the file is cut into chunks at line
+* boundaries, each chunk is parsed into its own dictionary, and the chunks are
+* then merged in file order, so items get the same ids as in a sequential read.
+* Only a few chunks per thread are parsed ahead of the one being merged, and
+* each is dropped once merged, so a parallel read holds a bounded part of the
+* file in memory, as streaming mode needs.
+*/
+public class CsvBasketReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Files smaller than this are always parsed on one thread.
+    private static final long MIN_PARALLEL_SIZE = 8L << 20;
+    // Size of the chunks of a parallel read, and the number of chunks per
+    // thread that may be parsed but not yet merged.
+    private static final long CHUNK_SIZE = 4L << 20;
+    private static final int CHUNKS_AHEAD = 2;
+
+    private Path path;
+    private int weightColumn;
+
+
+    public CsvBasketReader(String filename) {
+        this(filename, -1);
+    }
+
+
+    /**
+    * weightColumn is the index (from 0) of the field that holds the weight of
+    * every line, or -1 if lines are not weighted.
+    */
+    public CsvBasketReader(String filename, int weightColumn) {
+        this.path = Paths.get(filename);
+        this.weightColumn = weightColumn;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Encodes the items of every line with dictionary and passes the ids of
+    * each line to sink, in file order, with the weight of the line. The ids
+    * of a line are in the order of the fields and may repeat. sink may
+    * reorder them in place.
+    */
+    public void read(ItemDictionary dictionary, TransactionVisitor sink)
+            throws IOException {
+        read(dictionary, sink, 1);
+    }
+
+
+    /**
+    * Same as read(dictionary, sink), but parses the file on the given number
+    * of threads.
+    */
+    public void read(ItemDictionary dictionary, TransactionVisitor sink,
+                     int threads) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (threads <= 1 || size < MIN_PARALLEL_SIZE) {
+                parseChunk(channel, 0, size, dictionary, sink);
+            } else {
+                readInParallel(channel, size, dictionary, sink, threads);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+    * Same as read(dictionary, sink), but only reads the lines that start in
+    * bytes from..to - 1 of the file. Cutting a file anywhere into ranges and
+    * reading each of them this way reads every line exactly once.
+    */
+    public void readRange(ItemDictionary dictionary, TransactionVisitor sink,
+                          long from, long to) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long start = nextLineStart(channel, Math.min(from, size));
+            long end = nextLineStart(channel, Math.min(to, size));
+            parseChunk(channel, start, Math.max(start, end), dictionary,
+                       sink);
+        } finally {
+            channel.close();
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Parses chunks of CHUNK_SIZE bytes on threads threads and merges them
+    * into dictionary and sink in file order, as soon as each is parsed and
+    * all the chunks before it are merged. At most CHUNKS_AHEAD chunks per
+    * thread are submitted ahead of the next one to merge.
+    */
+    private void readInParallel(FileChannel channel, long size,
+                                ItemDictionary dictionary,
+                                TransactionVisitor sink, int threads)
+            throws IOException {
+        int numChunks = (int)((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        long[] bounds = new long[numChunks + 1];
+        for (int i = 1; i < numChunks; i++) {
+            bounds[i] = Math.max(bounds[i - 1],
+                                 nextLineStart(channel, CHUNK_SIZE * i));
+        }
+        bounds[numChunks] = size;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<ParsedChunk>> futures =
+            new ArrayDeque<Future<ParsedChunk>>();
+        int submitted = 0;
+        try {
+            for (int merged = 0; merged < numChunks; merged++) {
+                while (submitted < numChunks &&
+                       futures.size() < CHUNKS_AHEAD * threads) {
+                    futures.add(submitChunk(executor, channel,
+                                            bounds[submitted],
+                                            bounds[submitted + 1]));
+                    submitted++;
+                }
+                futures.poll().get().replay(dictionary, sink);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private Future<ParsedChunk> submitChunk(ExecutorService executor,
+                                            final FileChannel channel,
+                                            final long from, final long to) {
+        return executor.submit(new Callable<ParsedChunk>() {
+            public ParsedChunk call() throws IOException {
+                ParsedChunk chunk = new ParsedChunk();
+                parseChunk(channel, from, to, chunk.dictionary, chunk);
+                return chunk;
+            }
+        });
+    }
+
+
+    /*
+    * Returns the position of the first line that starts at or after position.
+    */
+    private static long nextLineStart(FileChannel channel, long position)
+            throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long filePosition = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, filePosition);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return filePosition + i + 1;
+                }
+            }
+            filePosition += read;
+        }
+    }
+
+
+    /*
+    * Parses the lines in bytes from..to - 1 of the file. from must be the
+    * start of a line, and to the start of a line or the end of the file.
+    */
+    private void parseChunk(FileChannel channel, long from, long to,
+                            ItemDictionary dictionary, TransactionVisitor sink)
+            throws IOException {
+        LineParser lineParser =
+            new LineParser(dictionary, sink, weightColumn);
+        byte[] buffer = new byte[(int)Math.min(BUFFER_SIZE, to - from + 1)];
+        int length = 0;
+        long filePosition = from;
+        boolean endOfChunk = from >= to;
+        while (true) {
+            if (!endOfChunk) {
+                if (length == buffer.length) {
+                    // A line longer than the buffer.
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                ByteBuffer target = ByteBuffer.wrap(
+                    buffer, length,
+                    (int)Math.min(buffer.length - length, to - filePosition));
+                int read = channel.read(target, filePosition);
+                if (read > 0) {
+                    length += read;
+                    filePosition += read;
+                }
+                endOfChunk = read <= 0 || filePosition >= to;
+            }
+
+            // Parse every complete line in the buffer.
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[i];
+                if (b != '\n' && b != '\r') {
+                    continue;
+                }
+                if (b == '\r' && i + 1 == length && !endOfChunk) {
+                    // Might be the first half of "\r\n".
+                    break;
+                }
+                lineParser.parse(buffer, lineStart, i);
+                if (b == '\r' && i + 1 < length && buffer[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+            if (endOfChunk) {
+                if (lineStart < length) {
+                    // Last line, without a line break.
+                    lineParser.parse(buffer, lineStart, length);
+                }
+                return;
+            }
+            // Keep the incomplete line for the next read.
+            System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+            length -= lineStart;
+        }
+    }
+}
+
+
+/**
+* Splits single lines into fields and passes their item ids on.
+*/
+class LineParser {
+    private ItemDictionary dictionary;
+    private TransactionVisitor sink;
+    private int weightColumn;
+    private int[] basket = new int[16];
+    private int basketSize;
+    private int column;
+    private int weight;
+
+
+    public LineParser(ItemDictionary dictionary, TransactionVisitor sink,
+                      int weightColumn) {
+        this.dictionary = dictionary;
+        this.sink = sink;
+        this.weightColumn = weightColumn;
+    }
+
+
+    /**
+    * Parses the line buffer[start..end), which has no line break.
+    */
+    public void parse(byte[] buffer, int start, int end) {
+        int quotes = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '"') {
+                quotes++;
+            }
+        }
+        basketSize = 0;
+        column = 0;
+        weight = 1;
+        int quotesSoFar = 0;
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '"') {
+                quotesSoFar++;
+            } else if (buffer[i] == ',' && ((quotes - quotesSoFar) & 1) == 0) {
+                addField(buffer, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(buffer, fieldStart, end);
+        sink.visit(basket, 0, basketSize, weight);
+    }
+
+
+    private void addField(byte[] buffer, int start, int end) {
+        if (column++ == weightColumn) {
+            if (start < end) {
+                weight = parseWeight(buffer, start, end);
+            }
+            return;
+        }
+        if (start == end) {
+            return;
+        }
+        if (basketSize == basket.length) {
+            basket = Arrays.copyOf(basket, 2 * basket.length);
+        }
+        basket[basketSize++] = dictionary.encode(buffer, start, end - start);
+    }
+
+
+    private static int parseWeight(byte[] buffer, int start, int end) {
+        long weight = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9' ||
+                (weight = 10 * weight + buffer[i] - '0') > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                    "Error: weight \"" +
+                    new String(buffer, start, end - start,
+                               StandardCharsets.UTF_8) +
+                    "\" is not a non-negative integer.");
+            }
+        }
+        return (int)weight;
+    }
+}
+
+
+/**
+* The baskets of one chunk of a file parsed in parallel, encoded with a
+* dictionary of its own.
+*/
+class ParsedChunk implements TransactionVisitor {
+    ItemDictionary dictionary = new ItemDictionary();
+    private int[] items = new int[1024];
+    private int[] offsets = new int[1024];
+    private int[] weights = new int[1024];
+    private int numBaskets = 0;
+
+
+    public void visit(int[] basket, int start, int end, int weight) {
+        if (numBaskets + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            weights = Arrays.copyOf(weights, offsets.length);
+        }
+        weights[numBaskets] = weight;
+        int itemsEnd = offsets[numBaskets];
+        if (itemsEnd + end - start > items.length) {
+            items = Arrays.copyOf(items, Math.max(2 * items.length,
+                                                  itemsEnd + end - start));
+        }
+        System.arraycopy(basket, start, items, itemsEnd, end - start);
+        numBaskets++;
+        offsets[numBaskets] = itemsEnd + end - start;
+    }
+
+
+    /**
+    * Re-encodes the baskets with the shared dictionary and passes them to
+    * sink. Local ids are added to the shared dictionary in the order they
+    * were first seen, which keeps the ids of a sequential read.
+    */
+    public void replay(ItemDictionary sharedDictionary,
+                       TransactionVisitor sink) {
+        int[] sharedIds = new int[dictionary.size()];
+        for (int id = 0; id < sharedIds.length; id++) {
+            byte[] bytes = dictionary.decodeBytes(id);
+            sharedIds[id] = sharedDictionary.encode(bytes, 0, bytes.length);
+        }
+        int[] basket = new int[16];
+        for (int b = 0; b < numBaskets; b++) {
+            int size = offsets[b + 1] - offsets[b];
+            if (basket.length < size) {
+                basket = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                basket[i] = sharedIds[items[offsets[b] + i]];
+            }
+            sink.visit(basket, 0, size, weights[b]);
+        }
+    }
+}
@@ -1,17 +1,225 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 /**
-* A dataset implemented as an ArrayList of sets of Strings. It loads the data
-* from a CSV file at construction time.
+* A dataset of baskets loaded from a CSV file at construction time. Every item
+* is encoded into a dense integer id (see ItemDictionary) and the baskets are
+* stored back to back as sorted ids in one packed int array, so mining never
+* touches item strings. Strings only come back at the output boundary, through
+* getDictionary().
+*
+* Baskets can carry a weight, the number of rows of the file they stand for,
+* either read from a column of the file or obtained by collapsing identical
+* baskets into one (see LoadOptions). Supports are then sums of weights.
+*
+* Datasets too big for memory can be loaded in streaming mode, in which the
+* encoded baskets are written to a SpillFile instead of being kept, and every
+* pass reads them back from disk. Memory use is then bounded by the
+* dictionary and the candidates rather than by the size of the file.
+*
+* New baskets can be appended to a dataset that has already been mined (see
+* addIncrement), in which case the frequent itemsets are updated with the FUP
+* algorithm instead of being mined again from scratch.
+*
+* A dataset and the itemset counts mined from it can also be saved to a
+* SnapshotFile and rebuilt from it (see toSnapshot), which skips parsing the
+* CSV file and, at the same or a higher support, mining it.
+*
+* Tabular datasets whose items are "Column:value" pairs, with one value per
+* column in each basket, can be mined in categorical mode (see LoadOptions).
+* Two values of the same column never occur together, so candidates that
+* hold both are never generated.
+*
+* For quick approximate results, only a random sample of the rows of the file
+* can be kept (see LoadOptions.sampleSize and SampleBounds), and the itemsets
+* mined from it checked against the whole file later (see verifySample).
+*
+* With LoadOptions.dhp, apriori prunes C_2 with the pair hash buckets of DHP
+* and counts every later pass over a copy of the baskets trimmed of the
+* items and baskets that cannot hold a candidate (see aprioriAlgorithm).
+*
+* The partitioned engine (see partitionedAlgorithm) mines ranges of baskets
+* on their own and then counts the union of their results, so it reads the
+* baskets twice however long the itemsets get.
+*
+* With LoadOptions.workers, the baskets are loaded and counted by separate
+* worker processes, each holding one shard of the file, and this dataset
+* only holds the dictionary and the itemset counts (see CountDistribution).
+* Only apriori can be run on such a dataset.
+*
+* Loading and every mining pass are measured in a MiningMetrics (see
+* getMetrics).
 */
-public class Dataset extends ArrayList<Set<String>> {
-    public LinkedHashMap<Set<String>, Integer> itemsetCounts = null;
+public class Dataset {
+    public SupportCountTable itemsetCounts = null;
+
+    private ItemDictionary dictionary = new ItemDictionary();
+    // The items of basket t are transactionItems[transactionOffsets[t]] up to
+    // (but not including) transactionItems[transactionOffsets[t + 1]].
+    private int[] transactionItems = new int[1024];
+    private int[] transactionOffsets = new int[1024];
+    private int numTransactions = 0;
+    // Weight of every basket, or null if they all weigh 1.
+    private int[] transactionWeights = null;
+    private int totalWeight = 0;
+    // Where the baskets are in streaming mode, or null if they are in memory.
+    private SpillFile spillFile = null;
+    // Counts supports on several threads when set (see setThreads).
+    private ParallelCounter parallelCounter = null;
+    // The workers that hold the baskets with LoadOptions.workers, or null.
+    private CountDistribution countDistribution = null;
+    // How the dataset was read, which increments are read the same way.
+    private LoadOptions loadOptions;
+    // In categorical mode, the column of every item id (-1 for items that
+    // are not in any column), or null otherwise. See updateItemColumns.
+    private int[] itemColumns = null;
+    private Map<String, Integer> columnIds = new HashMap<String, Integer>();
+    private MiningMetrics metrics = new MiningMetrics();
+
+    // With LoadOptions.sampleSize, the baskets of the sample while the file
+    // is read, and the number of rows (total weight) of the file.
+    private int[][] reservoir = null;
+    private Random sampleRandom = null;
+    private long fileWeight = 0;
+    // Whether the baskets and counts are those of a sample of the file.
+    private boolean sampled = false;
 
 
     public Dataset(String datasetFilename,
                    boolean includeEmptyBaskets) throws Exception {
-        loadDataset(datasetFilename, includeEmptyBaskets);
+        this(datasetFilename, new LoadOptions(includeEmptyBaskets));
+    }
+
+
+    public Dataset(String datasetFilename,
+                   LoadOptions options) throws Exception {
+        if (options.streaming && options.collapseDuplicates) {
+            throw new Exception("Error: identical baskets cannot be " +
+                                "collapsed in streaming mode.");
+        }
+        loadOptions = options;
+        MiningStep step = metrics.start("load", 0);
+        if (options.workers > 0) {
+            // The workers stream and collapse their own shards.
+            loadShards(datasetFilename, options);
+            finish(step);
+            return;
+        }
+        if (options.streaming) {
+            spillFile = new SpillFile(options.spillDirectory);
+        }
+        loadDataset(datasetFilename, options);
+        if (options.collapseDuplicates) {
+            collapseDuplicates();
+        }
+        setThreads(options.threads);
+        finish(step);
+    }
+
+
+    /**
+    * A dataset of the lines of datasetFilename that start in bytes
+    * from..to - 1, encoded with a dictionary of its own. Used by CountWorker
+    * for its shard of the file. Unlike a whole file, a shard may be empty.
+    */
+    public Dataset(String datasetFilename, long from, long to,
+                   LoadOptions options) throws Exception {
+        if (options.streaming) {
+            spillFile = new SpillFile(options.spillDirectory);
+        }
+        loadOptions = options;
+        MiningStep step = metrics.start("load", 0);
+        CsvBasketReader csvReader =
+            new CsvBasketReader(datasetFilename, options.weightColumn);
+        csvReader.readRange(dictionary, basketAdder(options), from, to);
+        if (spillFile != null) {
+            spillFile.finish();
+        }
+        if (options.collapseDuplicates) {
+            collapseDuplicates();
+        }
+        setThreads(options.threads);
+        finish(step);
+    }
+
+
+    /*
+    * A dataset of the baskets of source from index from up to (but not
+    * including) index to, in memory and sharing the dictionary of source.
+    * Used for the ranges of partitionedAlgorithm.
+    */
+    private Dataset(Dataset source, int from, int to) {
+        dictionary = source.dictionary;
+        loadOptions = source.loadOptions;
+        itemColumns = source.itemColumns;
+        source.scan(from, to, new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                // addTransaction sorts in place, and items belongs to
+                // source.
+                addTransaction(Arrays.copyOfRange(items, start, end), 0,
+                               end - start, weight);
+            }
+        });
+    }
+
+
+    /*
+    * A copy of source in memory with only the items that are in some itemset
+    * of keptItems (the candidates of pass k), and without the baskets left
+    * with fewer than k items, which cannot hold any candidate. Shares the
+    * dictionary, threads and metrics of source, and supports stay fractions
+    * of its total weight. Used by apriori with LoadOptions.dhp.
+    */
+    private Dataset(Dataset source, List<int[]> keptItems, final int k) {
+        dictionary = source.dictionary;
+        loadOptions = source.loadOptions;
+        itemColumns = source.itemColumns;
+        metrics = source.metrics;
+        final boolean[] kept = new boolean[dictionary.size()];
+        for (int[] itemset : keptItems) {
+            for (int item : itemset) {
+                kept[item] = true;
+            }
+        }
+        final int[] basket = new int[dictionary.size()];
+        source.scan(new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                int length = 0;
+                for (int i = start; i < end; i++) {
+                    if (kept[items[i]]) {
+                        basket[length++] = items[i];
+                    }
+                }
+                if (length >= k) {
+                    addTransaction(basket, 0, length, weight);
+                }
+            }
+        });
+        totalWeight = source.totalWeight;
+        parallelCounter = source.parallelCounter;
+    }
+
+
+    /**
+    * Rebuilds the dataset saved in snapshot, along with the itemset counts
+    * mined from it. options only supply the number of threads.
+    */
+    public Dataset(SnapshotFile snapshot, LoadOptions options) {
+        MiningStep step = metrics.start("load", 0);
+        for (byte[] item : snapshot.items) {
+            dictionary.encode(item, 0, item.length);
+        }
+        numTransactions = snapshot.numTransactions;
+        totalWeight = snapshot.totalWeight;
+        transactionOffsets = snapshot.transactionOffsets;
+        transactionItems = snapshot.transactionItems;
+        transactionWeights = snapshot.transactionWeights;
+        loadOptions = options;
+        itemsetCounts = newCountTable();
+        itemsetCounts.putAll(snapshot.itemsetCounts);
+        setThreads(options.threads);
+        finish(step);
     }
 
     //**************************************************************************
@@ -24,224 +232,1837 @@ public class Dataset extends ArrayList<Set<String>> {
     * with support at least minSupport.
     * We include the pseudocode from the paper as comments next to the
     * corresponding line of our code.
+    *
+    * With LoadOptions.dhp, this is closer to DHP (Park, Chen and Yu, "An
+    * Effective Hash-Based Algorithm for Mining Association Rules"). The
+    * first pass also hashes every pair of items of every basket into
+    * buckets, and a candidate 2-itemset whose bucket is below the minimum
+    * count cannot be frequent, so it is dropped before being counted. Before
+    * every later pass, the baskets are copied without the items that are in
+    * no candidate and without the baskets left too short to hold one, so
+    * each pass scans less data than the one before. Baskets are not trimmed
+    * in streaming mode, where the copy would have to be kept in memory.
+    *
+    * With LoadOptions.constraints, candidates are generated by
+    * constrainedGen instead of aprioriGen, and only the itemsets that rules
+    * allowed by the constraints can be made of are mined. The supports of
+    * the antecedents and consequents of their rules are counted afterwards
+    * in one more scan (see countRuleParts). The returned set then also holds
+    * every large item, and is meant to be filtered with
+    * ItemConstraints.filter.
     */
-    public Set<Set<String>> aprioriAlgorithm(double minSupport,
+    public Set<Itemset> aprioriAlgorithm(double minSupport,
             double minConfidence) {
-        Set<Set<String>> answer = new HashSet<Set<String>>();
+        Set<Itemset> answer = new LinkedHashSet<Itemset>();
 
-        itemsetCounts = new LinkedHashMap<Set<String>, Integer>();
+        itemsetCounts = newCountTable();
+        int minCount = minimumCount(minSupport, false);
+        updateItemColumns();
 
         // Large 1-itemsets.
         // "L_1 = {large 1-itemsets};"
-        Set<Set<String>> large1Itemsets = getLarge1Itemsets(minSupport);
-        answer.addAll(large1Itemsets);
+        MiningStep step = metrics.start("apriori", 1);
+        int[] itemCounts;
+        // Counts of the pair hash buckets with LoadOptions.dhp, or null.
+        int[] pairBucketCounts = null;
+        if (loadOptions.dhp) {
+            int numItems = dictionary.size();
+            int[] counts = countCandidates(pairBucketKernel(numItems),
+                                           numItems + numPairBuckets());
+            itemCounts = Arrays.copyOf(counts, numItems);
+            pairBucketCounts = Arrays.copyOfRange(counts, numItems,
+                                                  counts.length);
+        } else {
+            itemCounts = countItems();
+        }
+        List<int[]> large1Itemsets =
+            getLarge1Itemsets(itemCounts, minimumCount(minSupport, true));
+        addAll(answer, large1Itemsets);
+        step.candidatesGenerated = dictionary.size();
+        step.candidatesSurviving = large1Itemsets.size();
+        finish(step);
 
         // Large (k-1)-itemsets.
-        Set<Set<String>> largeKMinus1Itemsets = large1Itemsets;
+        List<int[]> largeKMinus1Itemsets = large1Itemsets;
+        ItemConstraints constraints = loadOptions.constraints;
+        // With constraints, the large items rules may hold, and the pass
+        // whose candidates are the smallest itemsets that pass them (0
+        // without constraints).
+        int[] allowedItems = null;
+        int firstConstrainedPass = 0;
+        if (constraints != null) {
+            allowedItems = allowedItems(large1Itemsets);
+            largeKMinus1Itemsets =
+                constrainedLarge1Itemsets(large1Itemsets, allowedItems);
+            firstConstrainedPass = firstConstrainedPass();
+        }
+        // The baskets passes are counted over, trimmed with LoadOptions.dhp.
+        Dataset countedBaskets = this;
         // "for (k=2; L_{k-1} \neq \emptyset; k++) do begin"
-        while (!largeKMinus1Itemsets.isEmpty()) {
+        int k = 2;
+        while (!largeKMinus1Itemsets.isEmpty() || k <= firstConstrainedPass) {
+            if (largeKMinus1Itemsets.isEmpty()) {
+                // Only with constraints: no itemset with fewer items than
+                // the required ones passes them, so the first candidates
+                // are generated from none.
+                k = firstConstrainedPass;
+            }
             // New candidate k-itemsets.
             // "C_k = apriori-gen(L_{k-1}); // New candidates"
-            Set<Set<String>> candidateKItemsets
-                = aprioriGen(largeKMinus1Itemsets, largeKMinus1Itemsets);
-            for (Set<String> transaction : this) {
-                // For each transaction (row) in the dataset.
-                // "forall transactions t \in D do begin"
-
-                // New candidate k-itemsets that are contained in this
-                // transaction
-                // "C_t = subset(C_k, t); // Candidates contained in t"
-                Set<Set<String>> candidateKItemsetsContainedInT =
-                    subset(candidateKItemsets, transaction);
-
-                for (Set<String> candidate : candidateKItemsetsContainedInT) {
-                    // "forall candidates c \in C_t do"
-
-                    // "c.count++;"
-                    Integer itemsetCount = itemsetCounts.get(candidate);
-                    if (itemsetCount == null) {
-                        itemsetCount = 0;
-                    }
-                    itemsetCounts.put(candidate, itemsetCount + 1);
-                }
+            step = metrics.start("apriori", k);
+            List<int[]> candidateKItemsets = constraints == null
+                ? aprioriGen(largeKMinus1Itemsets, step)
+                : constrainedGen(largeKMinus1Itemsets, allowedItems, k,
+                                 k == firstConstrainedPass, step);
+            if (pairBucketCounts != null && k == 2) {
+                candidateKItemsets = prunePairs(candidateKItemsets,
+                                                pairBucketCounts, minCount);
+                step.candidatesPruned =
+                    step.candidatesGenerated - candidateKItemsets.size();
+            }
+            if (loadOptions.dhp && spillFile == null &&
+                !candidateKItemsets.isEmpty()) {
+                // With constraints, later candidates are not only made of
+                // the items of these ones (see constrainedGen), but of any
+                // allowed item.
+                List<int[]> keptItems = constraints == null
+                    ? candidateKItemsets
+                    : Collections.singletonList(allowedItems);
+                countedBaskets = new Dataset(countedBaskets, keptItems, k);
+            }
+            int[] candidateCounts;
+            if (countDistribution != null) {
+                // Counted by every worker in its shard, and summed.
+                candidateCounts =
+                    countDistribution.countCandidates(candidateKItemsets);
+            } else {
+                CandidateTrie candidateTrie =
+                    new CandidateTrie(candidateKItemsets, dictionary.size());
+                candidateCounts =
+                    countedBaskets.countCandidates(candidateTrie);
             }
             // Large k-itemsets.
             // "L_k = {c \in C_k | c.count \geq minsup}"
-            Set<Set<String>> largeKItemsets = new HashSet<Set<String>>();
-            for (Set<String> candidate : candidateKItemsets) {
-                Integer itemsetCount = itemsetCounts.get(candidate);
-                if (itemsetCount == null) {
-                    itemsetCount = 0;
-                }
-                if (itemsetCount * 1.0 / this.size() >= minSupport) {
+            List<int[]> largeKItemsets = new ArrayList<int[]>();
+            for (int c = 0; c < candidateKItemsets.size(); c++) {
+                int[] candidate = candidateKItemsets.get(c);
+                if (candidateCounts[c] >= minCount) {
+                    itemsetCounts.putCount(new Itemset(candidate),
+                                           candidateCounts[c]);
                     largeKItemsets.add(candidate);
                 }
             }
-            answer.addAll(largeKItemsets);
+            addAll(answer, largeKItemsets);
+            step.candidatesSurviving = largeKItemsets.size();
+            finish(step);
             largeKMinus1Itemsets = largeKItemsets;
+            k++;
+        }
+        if (constraints != null) {
+            countRuleParts(answer);
         }
         return answer;
     }
 
 
-    public Double getItemsetSupport(Set<String> itemset) {
-        Integer itemCount = itemsetCounts.get(itemset);
-        if (itemCount == null) {
-            throw new RuntimeException("getItemsetSupport failed!");
-        }
-        return (double)itemCount / this.size();
+    /**
+    * Returns the same frequent itemsets as aprioriAlgorithm, found with the
+    * vertical Eclat engine (see EclatMiner) instead.
+    */
+    public Set<Itemset> eclatAlgorithm(double minSupport) {
+        MiningStep step = metrics.start("eclat", 0);
+        itemsetCounts = newCountTable();
+        updateItemColumns();
+        EclatMiner eclatMiner = new EclatMiner(
+            minimumCount(minSupport, false), itemsetCounts, itemColumns,
+            BitsetCounter.create(loadOptions.simd));
+        Set<Itemset> answer = eclatMiner.mine(
+            verticalLayout(minimumCount(minSupport, true)));
+        step.candidatesSurviving = answer.size();
+        finish(step);
+        return answer;
     }
 
-    //**************************************************************************
-    // PRIVATE METHODS
-    //**************************************************************************
 
-    /*
-    * Returns all candidates in candidateKItemsets that are contained in
-    * transaction.
+    /**
+    * Returns the same frequent itemsets as aprioriAlgorithm, found with the
+    * FP-Growth engine (see FPGrowthMiner) instead.
+    */
+    public Set<Itemset> fpGrowthAlgorithm(double minSupport) {
+        MiningStep step = metrics.start("fpgrowth", 0);
+        itemsetCounts = newCountTable();
+        FPGrowthMiner fpGrowthMiner = new FPGrowthMiner(
+            minimumCount(minSupport, false), itemsetCounts);
+        Set<Itemset> answer = fpGrowthMiner.mine(
+            this, countItems(), minimumCount(minSupport, true));
+        step.candidatesSurviving = answer.size();
+        finish(step);
+        return answer;
+    }
+
+
+    /**
+    * Returns the same frequent itemsets as aprioriAlgorithm, found with the
+    * two-scan partition algorithm of Savasere, Omiecinski and Navathe ("An
+    * Efficient Algorithm for Mining Association Rules in Large Databases"),
+    * as in the SON MapReduce formulation.
+    *
+    * The stored baskets are split into numPartitions ranges, and each range
+    * is copied into memory and mined with Eclat at minSupport scaled to its
+    * weight. An itemset below that count in every range is below minSupport
+    * overall, so the union of the local results holds every frequent
+    * itemset. The union is then counted in one more scan. Ranges are
+    * independent and are mined on the threads of the load options, so at
+    * most that many ranges are in memory at once, which bounds memory with
+    * streaming datasets.
     */
-    private Set<Set<String>> subset(Set<Set<String>> candidateKItemsets,
-                                    Set<String> transaction) {
-        Set<Set<String>> result = new HashSet<Set<String>>();
-        for (Set<String> candidateKItemset : candidateKItemsets) {
-            if (transaction.containsAll(candidateKItemset)) {
-                result.add(candidateKItemset);
+    public Set<Itemset> partitionedAlgorithm(double minSupport,
+                                             int numPartitions) {
+        itemsetCounts = newCountTable();
+        updateItemColumns();
+        numPartitions = Math.max(1, Math.min(numPartitions, numTransactions));
+
+        // First scan: the locally frequent itemsets of every range.
+        MiningStep step = metrics.start("partitions", 0);
+        final double localMinSupport = minSupport;
+        List<Callable<Set<Itemset>>> tasks =
+            new ArrayList<Callable<Set<Itemset>>>();
+        for (int p = 0; p < numPartitions; p++) {
+            final int from = (int)((long)numTransactions * p / numPartitions);
+            final int to =
+                (int)((long)numTransactions * (p + 1) / numPartitions);
+            tasks.add(new Callable<Set<Itemset>>() {
+                public Set<Itemset> call() {
+                    return new Dataset(Dataset.this, from, to)
+                        .locallyFrequentItemsets(localMinSupport);
+                }
+            });
+        }
+        Set<Itemset> candidateSet = new HashSet<Itemset>();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, loadOptions.threads));
+        try {
+            for (Future<Set<Itemset>> result : pool.invokeAll(tasks)) {
+                step.candidatesGenerated += result.get().size();
+                candidateSet.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Error: interrupted while mining partitions.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
             }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
         }
-        return result;
+        step.candidatesSurviving = candidateSet.size();
+        finish(step);
+
+        // Second scan: the global counts of the candidates, with one trie
+        // per itemset length.
+        step = metrics.start("partition candidates", 0);
+        List<Itemset> candidates = new ArrayList<Itemset>(candidateSet);
+        Collections.sort(candidates);
+        int[] counts = countCandidates(candidateKernel(candidates),
+                                       candidates.size());
+        for (int c = 0; c < candidates.size(); c++) {
+            itemsetCounts.putCount(candidates.get(c), counts[c]);
+        }
+        itemsetCounts.removeBelow(minimumCount(minSupport, false));
+        Set<Itemset> answer = frequentItemsetsAt(minSupport);
+        step.candidatesGenerated = candidates.size();
+        step.candidatesSurviving = answer.size();
+        finish(step);
+        return answer;
     }
 
+
     /**
-    * aprioriGen method used by the apriori algorithm to generate candidates of
-    * length k based on candidates of length k-1.
+    * Returns the frequent itemsets of the whole file that a sampled dataset
+    * was drawn from (datasetFilename, read with the same options), given the
+    * itemsets mined from the sample at a lower support. This is the
+    * verification step of Toivonen's algorithm.
+    *
+    * The itemsets found on the sample and their negative border (the
+    * itemsets all of whose subsets were found, but not themselves) are
+    * counted in one scan of the file. If no itemset of the border is
+    * frequent, every frequent itemset has been counted. Otherwise the sample
+    * missed some, and the border of the frequent itemsets found so far is
+    * counted in further scans until it holds no new itemset.
+    *
+    * Afterwards itemsetCounts and size() are those of the whole file, while
+    * the stored baskets remain the sample.
     */
-    private Set<Set<String>> aprioriGen(Set<Set<String>> cKMinus1, Set<Set<String>> lKMinus1) {
-        Set<Set<String>> candidateKItemsets =
-            joinStep(lKMinus1);
-        candidateKItemsets = pruneStep(cKMinus1, candidateKItemsets);
+    public Set<Itemset> verifySample(String datasetFilename,
+                                     double minSupport,
+                                     Set<Itemset> sampleFrequentItemsets)
+            throws Exception {
+        if (!sampled) {
+            return sampleFrequentItemsets;
+        }
+        if (fileWeight > Integer.MAX_VALUE) {
+            throw new Exception(
+                "Error: the total weight of the dataset is too large.");
+        }
+        MiningStep step = metrics.start("verify sample", 0);
+        updateItemColumns();
+        totalWeight = (int)fileWeight;
+        sampled = false;
+        itemsetCounts = newCountTable();
 
-        return candidateKItemsets;
+        Set<Itemset> counted = new HashSet<Itemset>();
+        List<Itemset> candidates =
+            new ArrayList<Itemset>(sampleFrequentItemsets);
+        candidates.addAll(negativeBorder(sampleFrequentItemsets));
+        Set<Itemset> answer = sampleFrequentItemsets;
+        while (!candidates.isEmpty()) {
+            Collections.sort(candidates);
+            int[] counts = countInFile(datasetFilename, candidates);
+            for (int c = 0; c < candidates.size(); c++) {
+                counted.add(candidates.get(c));
+                itemsetCounts.putCount(candidates.get(c), counts[c]);
+            }
+            itemsetCounts.removeBelow(minimumCount(minSupport, false));
+            answer = frequentItemsetsAt(minSupport);
+            candidates = new ArrayList<Itemset>();
+            for (Itemset itemset : negativeBorder(answer)) {
+                if (!counted.contains(itemset)) {
+                    candidates.add(itemset);
+                }
+            }
+        }
+        step.candidatesGenerated = counted.size();
+        step.candidatesSurviving = answer.size();
+        finish(step);
+        return answer;
     }
 
 
-    private HashSet<Set<String>> joinStep(Set<Set<String>> lKMinus1) {
-        HashSet<Set<String>> result = new HashSet<Set<String>>();
-        for (Set<String> itemset1 : lKMinus1) {
-            for (Set<String> itemset2 : lKMinus1) {
-                boolean skip = false;
-                Set<String> itemset2Copy = new TreeSet<String>(itemset2);
-                String in1Only = null;
-                String in2Only = null;
-                for (String item : itemset1) {
-                    if (itemset2.contains(item)) {
-                        itemset2Copy.remove(item);
-                        continue;
-                    } else {
-                        if (in1Only == null) {
-                            in1Only = item;
-                        } else {
-                            // Skip this pair!
-                            skip = true;
-                            break;
-                        }
-                    }
+    /**
+    * Appends the baskets of incrementFilename (read with the same options as
+    * the dataset) and returns the frequent itemsets of the whole dataset,
+    * given the frequent itemsets found before the increment with the same
+    * minSupport and any engine. itemsetCounts must still hold the counts of
+    * that run, and is replaced by the counts of the updated itemsets.
+    *
+    * This is the FUP algorithm (Cheung, Han, Ng and Wong, "Maintenance of
+    * Discovered Association Rules in Large Databases: An Incremental Updating
+    * Technique"). Each pass counts the candidates in the increment only. The
+    * count of a candidate in the old baskets is known if it was frequent
+    * before, and is 0 if it has a new item. Otherwise it was
+    * below the old threshold, so the candidate can only be frequent now if
+    * its count in the increment makes up the difference, and only those
+    * candidates are counted in the old baskets.
+    */
+    public Set<Itemset> addIncrement(String incrementFilename,
+                                     double minSupport,
+                                     Set<Itemset> frequentItemsets)
+            throws Exception {
+        int oldNumTransactions = numTransactions;
+        int oldNumItems = dictionary.size();
+        // Largest count an itemset can have had in the old baskets without
+        // being frequent: below the old 1-itemset threshold if one of its
+        // items was not frequent, and below the old k-itemset one otherwise.
+        int oldMaxCount1 = minimumCount(minSupport, true) - 1;
+        int oldMaxCountK = minimumCount(minSupport, false) - 1;
+        boolean[] wasLargeItem = new boolean[oldNumItems];
+        for (Itemset itemset : frequentItemsets) {
+            if (itemset.size() == 1) {
+                wasLargeItem[itemset.get(0)] = true;
+            }
+        }
+        SupportCountTable oldCounts = itemsetCounts;
+
+        MiningStep step = metrics.start("load increment", 0);
+        readBaskets(incrementFilename, loadOptions);
+        if (spillFile != null) {
+            spillFile.finish();
+        }
+        updateItemColumns();
+        finish(step);
+
+        Set<Itemset> answer = new LinkedHashSet<Itemset>();
+        itemsetCounts = newCountTable();
+        List<int[]> candidates = new ArrayList<int[]>();
+        for (int item = 0; item < dictionary.size(); item++) {
+            candidates.add(new int[] {item});
+        }
+        step = metrics.start("increment", 1);
+        step.candidatesGenerated = candidates.size();
+        while (!candidates.isEmpty()) {
+            boolean singletons = candidates.get(0).length == 1;
+            int minCount = minimumCount(minSupport, singletons);
+            int[] counts = countCandidates(
+                new CandidateTrie(candidates, dictionary.size()),
+                oldNumTransactions, numTransactions);
+
+            // Candidates whose count in the old baskets is still unknown.
+            List<int[]> uncertain = new ArrayList<int[]>();
+            List<Integer> uncertainIndexes = new ArrayList<Integer>();
+            for (int c = 0; c < candidates.size(); c++) {
+                Itemset candidate = new Itemset(candidates.get(c));
+                int oldCount = oldCounts.getCount(candidate);
+                boolean hasNewItem = false;
+                boolean allItemsWereLarge = true;
+                for (int i = 0; i < candidate.size(); i++) {
+                    int item = candidate.get(i);
+                    hasNewItem |= item >= oldNumItems;
+                    allItemsWereLarge &= item < oldNumItems &&
+                                         wasLargeItem[item];
                 }
-                for (String item : itemset2Copy) {
-                    if (in2Only == null && in1Only.compareTo(item) < 0) {
-                        in2Only = item;
+                if (oldCount != -1) {
+                    counts[c] += oldCount;
+                } else if (!hasNewItem) {
+                    int oldMaxCount = allItemsWereLarge && !singletons
+                                      ? oldMaxCountK : oldMaxCount1;
+                    if (counts[c] + oldMaxCount >= minCount) {
+                        uncertain.add(candidates.get(c));
+                        uncertainIndexes.add(c);
                     } else {
-                        // Skip this pair!
-                        skip = true;
-                        break;
+                        // Cannot be frequent, and its count stays unknown.
+                        counts[c] = 0;
                     }
                 }
-                if (!skip) {
-                    itemset2Copy.addAll(itemset1);
-                    result.add(itemset2Copy);
+            }
+            if (!uncertain.isEmpty()) {
+                int[] oldUncertainCounts = countCandidates(
+                    new CandidateTrie(uncertain, dictionary.size()),
+                    0, oldNumTransactions);
+                for (int u = 0; u < uncertain.size(); u++) {
+                    counts[uncertainIndexes.get(u)] += oldUncertainCounts[u];
+                }
+            }
+
+            List<int[]> largeItemsets = new ArrayList<int[]>();
+            for (int c = 0; c < candidates.size(); c++) {
+                if (counts[c] >= minCount) {
+                    itemsetCounts.putCount(new Itemset(candidates.get(c)),
+                                           counts[c]);
+                    largeItemsets.add(candidates.get(c));
                 }
             }
+            addAll(answer, largeItemsets);
+            step.candidatesSurviving = largeItemsets.size();
+            finish(step);
+            if (largeItemsets.isEmpty()) {
+                break;
+            }
+            step = metrics.start("increment",
+                                 largeItemsets.get(0).length + 1);
+            candidates = aprioriGen(largeItemsets, step);
+            if (candidates.isEmpty()) {
+                finish(step);
+            }
         }
-        return result;
+        return answer;
     }
 
 
-    private Set<Set<String>> pruneStep(Set<Set<String>> cKMinus1, Set<Set<String>> cK) {
-        for (Iterator<Set<String>> iterator = cK.iterator(); iterator.hasNext();) {
-            Set<String> itemset = iterator.next();
+    /**
+    * Returns the closed frequent itemsets at minSupport, or only the maximal
+    * ones if maximal is true, found with LCM (see ClosedItemsetMiner) and
+    * sorted the way the engines return frequent itemsets. itemsetCounts gets
+    * the count of every frequent itemset, derived from the closed ones, so
+    * frequentItemsetsAt(minSupport) and rules work as after any engine.
+    */
+    public Set<Itemset> closedItemsets(double minSupport, boolean maximal) {
+        MiningStep step = metrics.start("lcm", 0);
+        ClosedItemsetMiner closedItemsetMiner =
+            new ClosedItemsetMiner(minimumCount(minSupport, false));
+        Map<Itemset, Integer> closedCounts = closedItemsetMiner.mine(
+            verticalLayout(minimumCount(minSupport, true)), numTransactions);
 
-            for (String item : itemset) {
-                Set<String> subset = new HashSet<String>(itemset);
-                subset.remove(item);
-                if (!cKMinus1.contains(subset)) {
-                    iterator.remove();
-                    break;
+        // The count of an itemset is that of its closed superset with the
+        // highest count, so closed itemsets are spread over their subsets
+        // from the highest count down, and a subset that already has a count
+        // has been reached from a better superset, as have all of its own
+        // subsets.
+        List<Map.Entry<Itemset, Integer>> byCount =
+            new ArrayList<Map.Entry<Itemset, Integer>>(closedCounts.entrySet());
+        Collections.sort(byCount,
+                         new Comparator<Map.Entry<Itemset, Integer>>() {
+                public int compare(Map.Entry<Itemset, Integer> entry1,
+                                   Map.Entry<Itemset, Integer> entry2) {
+                    return entry2.getValue().compareTo(entry1.getValue());
                 }
+            });
+        itemsetCounts = newCountTable();
+        for (Map.Entry<Itemset, Integer> entry : byCount) {
+            addSubsetCounts(entry.getKey(), entry.getValue());
+        }
+
+        List<Itemset> result = new ArrayList<Itemset>();
+        for (Itemset closedItemset : closedCounts.keySet()) {
+            if (!maximal || closedItemsetMiner.isMaximal(closedItemset)) {
+                result.add(closedItemset);
             }
         }
-        return cK;
+        Collections.sort(result);
+        step.candidatesSurviving = result.size();
+        finish(step);
+        return new LinkedHashSet<Itemset>(result);
     }
 
 
-    private Set<Set<String>> getLarge1Itemsets(double minSupport) {
-        for (Set<String> itemset : this) {
-            for (String item : itemset) {
-                Set<String> candidate = new TreeSet<String>();
-                candidate.add(item);
-                Integer itemsetCount = itemsetCounts.get(candidate);
-                if (itemsetCount == null) {
-                    itemsetCount = 0;
+    /**
+    * Returns the closed (or, if maximal is true, the maximal) itemsets among
+    * frequentItemsets, whose counts must be in itemsetCounts. Used when the
+    * frequent itemsets were not mined by closedItemsets.
+    */
+    public Set<Itemset> condense(Set<Itemset> frequentItemsets,
+                                 boolean maximal) {
+        List<Integer> largeItems = new ArrayList<Integer>();
+        for (Itemset itemset : frequentItemsets) {
+            if (itemset.size() == 1) {
+                largeItems.add(itemset.get(0));
+            }
+        }
+        Set<Itemset> result = new LinkedHashSet<Itemset>();
+        for (Itemset itemset : frequentItemsets) {
+            boolean kept = true;
+            for (int i = 0; i < largeItems.size() && kept; i++) {
+                int item = largeItems.get(i);
+                if (itemset.contains(item)) {
+                    continue;
                 }
-                itemsetCounts.put(candidate, itemsetCount + 1);
+                int[] superset = Arrays.copyOf(itemset.toArray(),
+                                               itemset.size() + 1);
+                superset[itemset.size()] = item;
+                Itemset supersetItemset = Itemset.of(superset);
+                if (frequentItemsets.contains(supersetItemset)) {
+                    kept = !maximal &&
+                           itemsetCounts.getCount(supersetItemset) !=
+                           itemsetCounts.getCount(itemset);
+                }
+            }
+            if (kept) {
+                result.add(itemset);
             }
         }
-        Set<Set<String>> large1Itemsets = new HashSet<Set<String>>();
-        for (Map.Entry<Set<String>, Integer> itemsetAndCount : itemsetCounts.entrySet()) {
-            Set<String> itemset = itemsetAndCount.getKey();
-            Integer count = itemsetAndCount.getValue();
-            if (count * 1.0 / this.size() > minSupport) {
-                large1Itemsets.add(itemset);
+        return result;
+    }
+
+
+    /**
+    * Returns the frequent itemsets at minSupport, sorted the way the engines
+    * return them, straight from itemsetCounts without scanning the baskets.
+    * itemsetCounts must have been mined at minSupport or a lower support, as
+    * it then holds every itemset that is frequent at minSupport.
+    */
+    public Set<Itemset> frequentItemsetsAt(double minSupport) {
+        int min1Count = minimumCount(minSupport, true);
+        int minCount = minimumCount(minSupport, false);
+        List<Itemset> frequentItemsets = new ArrayList<Itemset>();
+        for (Map.Entry<Itemset, Integer> entry : itemsetCounts.entrySet()) {
+            Itemset itemset = entry.getKey();
+            // As in apriori, every item of a frequent itemset has to pass the
+            // test for large 1-itemsets.
+            boolean frequent = entry.getValue() >= minCount;
+            for (int i = 0; i < itemset.size() && frequent; i++) {
+                frequent = itemsetCounts.getCount(
+                    Itemset.of(itemset.get(i))) >= min1Count;
+            }
+            if (frequent) {
+                frequentItemsets.add(itemset);
             }
         }
-        return large1Itemsets;
+        Collections.sort(frequentItemsets);
+        return new LinkedHashSet<Itemset>(frequentItemsets);
     }
 
 
-    private void loadDataset(String datasetFilename,
-                             boolean includeEmptyBaskets) throws Exception {
+    /**
+    * Returns a snapshot of the dataset and of its itemset counts, mined at
+    * minSupport, to be written to disk. source is the CSV file the dataset
+    * was read from. Only available for datasets in memory.
+    */
+    public SnapshotFile toSnapshot(File source, double minSupport) {
+        if (spillFile != null) {
+            throw new IllegalStateException(
+                "Streaming datasets cannot be saved to a snapshot.");
+        }
+        SnapshotFile snapshot = new SnapshotFile();
+        snapshot.sourceLength = source.length();
+        snapshot.sourceLastModified = source.lastModified();
+        snapshot.includeEmptyBaskets = loadOptions.includeEmptyBaskets;
+        snapshot.weightColumn = loadOptions.weightColumn;
+        snapshot.collapseDuplicates = loadOptions.collapseDuplicates;
+        snapshot.minSupport = minSupport;
+        snapshot.items = new byte[dictionary.size()][];
+        for (int item = 0; item < dictionary.size(); item++) {
+            snapshot.items[item] = dictionary.decodeBytes(item);
+        }
+        snapshot.numTransactions = numTransactions;
+        snapshot.totalWeight = totalWeight;
+        snapshot.transactionOffsets = transactionOffsets;
+        snapshot.transactionItems = transactionItems;
+        snapshot.transactionWeights = transactionWeights;
+        snapshot.itemsetCounts = itemsetCounts;
+        return snapshot;
+    }
 
-        File datasetFile = null;
-        try {
-            datasetFile = new File(datasetFilename);
-        } catch (Exception e) {
-            throw new Exception("Error: dataset file not found.");
+
+    /**
+    * Calls visitor once for every stored basket, in file order. In streaming
+    * mode this reads the baskets back from disk.
+    */
+    public void scan(TransactionVisitor visitor) {
+        if (spillFile != null) {
+            metrics.addTransactionsScanned(spillFile.size());
+            spillFile.scan(visitor);
+        } else {
+            scan(0, numTransactions, visitor);
+        }
+    }
+
+
+    /**
+    * Calls visitor once for every stored basket from index from up to (but
+    * not including) index to, in file order.
+    */
+    public void scan(int from, int to, TransactionVisitor visitor) {
+        if (countDistribution != null) {
+            throw new IllegalStateException(
+                "Error: the baskets are held by the count workers, which " +
+                "only run apriori.");
+        }
+        metrics.addTransactionsScanned(to - from);
+        if (spillFile != null) {
+            spillFile.scan(from, to, visitor);
+            return;
+        }
+        for (int t = from; t < to; t++) {
+            visitor.visit(transactionItems, transactionOffsets[t],
+                          transactionOffsets[t + 1], weight(t));
+        }
+    }
+
+
+    /**
+    * Makes supports be counted on the given number of threads (see
+    * ParallelCounter). With one thread, everything runs on the caller's
+    * thread as before. Streaming datasets are always counted on one thread,
+    * as they are read sequentially from disk.
+    */
+    public void setThreads(int threads) {
+        parallelCounter = threads > 1 && spillFile == null
+                          ? new ParallelCounter(threads) : null;
+    }
+
+
+    /**
+    * Returns whether the baskets are kept on disk (streaming mode) rather
+    * than in memory.
+    */
+    public boolean isStreaming() {
+        return spillFile != null;
+    }
+
+
+    /**
+    * Returns the number of baskets (the sum of their weights) that contain
+    * each item, indexed by item id.
+    */
+    public int[] countItems() {
+        if (countDistribution != null) {
+            return countDistribution.countItems(dictionary.size());
+        }
+        if (parallelCounter != null) {
+            return parallelCounter.countItems(this);
         }
-        Scanner csvScanner = new Scanner(datasetFile);
-        while (csvScanner.hasNextLine()) {
-            String basketString = csvScanner.nextLine();
-            Set<String> basketSet = new LinkedHashSet<String>();
-            // String[] itemStrings = basketString.split(",");
-            // Regular Expression to match CSV lines with escaped quotes (http://stackoverflow.com/questions/15738918/splitting-a-csv-file-with-quotes-as-text-delimiter-using-string-split?answertab=votes#tab-top).
-            String[] itemStrings = basketString.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
-            for (String itemString : itemStrings) {
-                String item = itemString;
-                if (!item.isEmpty()) {
-                    basketSet.add(item);
+        final int[] itemCounts = new int[dictionary.size()];
+        scan(new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                for (int i = start; i < end; i++) {
+                    itemCounts[items[i]] += weight;
                 }
             }
-            if (!includeEmptyBaskets && basketSet.isEmpty()) {
-                continue;
+        });
+        return itemCounts;
+    }
+
+
+    /**
+    * Converts the dataset into vertical form in one pass: returns, for every
+    * item id, the set of transactions that contain the item, or null if the
+    * support count of the item is below minItemCount. Transactions are
+    * numbered by their index among the stored baskets.
+    */
+    public TidSet[] verticalLayout(int minItemCount) {
+        final int[] itemCounts = countItems();
+        final int[] occurrences = new int[dictionary.size()];
+        scan(new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                for (int i = start; i < end; i++) {
+                    occurrences[items[i]]++;
+                }
+            }
+        });
+        final int[][] tids = new int[dictionary.size()][];
+        for (int item = 0; item < tids.length; item++) {
+            if (itemCounts[item] >= minItemCount) {
+                tids[item] = new int[occurrences[item]];
             }
-            this.add(basketSet);
+            itemCounts[item] = 0;
         }
-        if (this.isEmpty()) {
-            throw new Exception("Error: dataset file not found.");
+        // Streaming datasets do not keep their weights in memory, so they are
+        // collected here.
+        final int[] weights = spillFile == null || size() == numTransactions
+                              ? transactionWeights : new int[numTransactions];
+        scan(new TransactionVisitor() {
+            int t = 0;
+
+            public void visit(int[] items, int start, int end, int weight) {
+                for (int i = start; i < end; i++) {
+                    int item = items[i];
+                    if (tids[item] != null) {
+                        tids[item][itemCounts[item]++] = t;
+                    }
+                }
+                if (weights != null) {
+                    weights[t] = weight;
+                }
+                t++;
+            }
+        });
+        TidSet[] tidSets = new TidSet[tids.length];
+        for (int item = 0; item < tids.length; item++) {
+            if (tids[item] != null) {
+                tidSets[item] = TidSet.fromSortedTids(
+                    tids[item], tids[item].length, numTransactions, weights);
+            }
         }
-        if (this.size() < 1000) {
-            System.out.println("Warning: dataset has " + this.size() + " " +
-                               "rows, which is less than the minimum of 1000 " +
-                               "rows");
-            System.out.println("         required by the assignment's " +
-                               "instructions.");
+        return tidSets;
+    }
+
+
+    public Double getItemsetSupport(Itemset itemset) {
+        int itemCount = itemsetCounts.getCount(itemset);
+        if (itemCount == -1) {
+            throw new RuntimeException("getItemsetSupport failed!");
+        }
+        return (double)itemCount / this.size();
+    }
+
+
+    /**
+    * Returns the dictionary used to encode the items of this dataset, which
+    * decodes itemsets back into strings for output.
+    */
+    public ItemDictionary getDictionary() {
+        return dictionary;
+    }
+
+
+    /**
+    * Returns whether the baskets and the itemset counts are those of a random
+    * sample of the rows of the file (see LoadOptions.sampleSize) rather than
+    * of all of them. A sample that would hold the whole file is not one.
+    */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+
+    /**
+    * Returns the number of rows (the total weight) read from the file,
+    * including those left out of a sample.
+    */
+    public long getFileWeight() {
+        return fileWeight;
+    }
+
+
+    /**
+    * Returns the measurements of loading and of every mining pass run so
+    * far.
+    */
+    public MiningMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+    * Returns the smallest basket count whose support reaches minSupport.
+    */
+    public int minimumCount(double minSupport) {
+        return minimumCount(minSupport, false);
+    }
+
+
+    /**
+    * Returns the column of the item with the given id in categorical mode, or
+    * -1 if the dataset is not categorical or the item is in no column.
+    */
+    public int itemColumn(int item) {
+        return itemColumns == null || item >= itemColumns.length
+               ? -1 : itemColumns[item];
+    }
+
+
+    /**
+    * Returns the number of baskets in the dataset. Weighted baskets count as
+    * many times as their weight, so this is the number supports are
+    * relative to.
+    */
+    public int size() {
+        return totalWeight;
+    }
+
+
+    /**
+    * Returns the number of baskets actually stored, which is less than
+    * size() when baskets carry weights.
+    */
+    public int storedSize() {
+        return numTransactions;
+    }
+
+
+    /**
+    * Returns the weight of the stored basket with index t. Only available for
+    * datasets in memory.
+    */
+    public int weight(int t) {
+        return transactionWeights == null ? 1 : transactionWeights[t];
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Returns the smallest basket count that reaches minSupport. Large
+    * 1-itemsets have always had to strictly exceed minSupport while longer
+    * itemsets only have to reach it, so the caller says which test applies.
+    */
+    private int minimumCount(double minSupport, boolean strict) {
+        int count = (int)Math.ceil(minSupport * totalWeight);
+        while (count > 0 && (strict ? (count - 1) * 1.0 / totalWeight > minSupport
+                                    : (count - 1) * 1.0 / totalWeight >= minSupport)) {
+            count--;
+        }
+        while (strict ? !(count * 1.0 / totalWeight > minSupport)
+                      : !(count * 1.0 / totalWeight >= minSupport)) {
+            count++;
+        }
+        return count;
+    }
+
+
+    /*
+    * Returns the number of baskets that contain each candidate in
+    * candidateTrie, indexed like the candidates the trie was built from.
+    * Package-private so that benchmarks/ can time one counting pass, and
+    * CountWorker can count its shard.
+    */
+    int[] countCandidates(CandidateTrie candidateTrie) {
+        return countCandidates(candidateTrie, 0, numTransactions);
+    }
+
+
+    /*
+    * Same as countCandidates(candidateTrie), but only counts the baskets from
+    * index from up to (but not including) index to.
+    */
+    private int[] countCandidates(CandidateTrie candidateTrie, int from,
+                                  int to) {
+        if (parallelCounter != null) {
+            return parallelCounter.countCandidates(this, candidateTrie, from,
+                                                   to);
+        }
+        final CandidateTrie trie = candidateTrie;
+        final int[] candidateCounts = new int[candidateTrie.size()];
+        scan(from, to, new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                // For each transaction (row) in the dataset.
+                // "forall transactions t \in D do begin"
+
+                // "C_t = subset(C_k, t); // Candidates contained in t"
+                // "forall candidates c \in C_t do"
+                // "c.count++;"
+                trie.count(items, start, end, weight, candidateCounts);
+            }
+        });
+        return candidateCounts;
+    }
+
+
+    /*
+    * Gives count to itemset and to all of its non-empty subsets that do not
+    * have a count yet.
+    */
+    private void addSubsetCounts(Itemset itemset, int count) {
+        if (itemset.size() == 0 || itemsetCounts.containsKey(itemset)) {
+            return;
+        }
+        itemsetCounts.put(itemset, count);
+        for (int i = 0; i < itemset.size(); i++) {
+            addSubsetCounts(itemset.without(i), count);
+        }
+    }
+
+
+    /*
+    * Returns the itemsets of this range of baskets whose count reaches
+    * minSupport times its weight, for partitionedAlgorithm. The threshold is
+    * rounded down and is the same for single items, so that no itemset that
+    * is frequent overall can be missed in every range.
+    */
+    private Set<Itemset> locallyFrequentItemsets(double minSupport) {
+        int minCount = Math.max(1, (int)Math.floor(minSupport * totalWeight));
+        EclatMiner eclatMiner = new EclatMiner(
+            minCount, new HashMap<Itemset, Integer>(), itemColumns,
+            BitsetCounter.create(loadOptions.simd));
+        return eclatMiner.mine(verticalLayout(minCount));
+    }
+
+
+    /*
+    * Returns a kernel that counts candidates of any lengths, which must be
+    * sorted (by length and then lexicographically), with one trie per
+    * length. The count of candidates.get(c) goes to counts[c].
+    */
+    private ParallelCounter.Kernel candidateKernel(List<Itemset> candidates) {
+        List<CandidateTrie> tries = new ArrayList<CandidateTrie>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        int first = 0;
+        while (first < candidates.size()) {
+            int k = candidates.get(first).size();
+            List<int[]> sameLength = new ArrayList<int[]>();
+            for (int c = first; c < candidates.size() &&
+                                candidates.get(c).size() == k; c++) {
+                sameLength.add(candidates.get(c).toArray());
+            }
+            tries.add(new CandidateTrie(sameLength, dictionary.size()));
+            offsets.add(first);
+            first += sameLength.size();
+        }
+        final CandidateTrie[] trieArray =
+            tries.toArray(new CandidateTrie[tries.size()]);
+        final int[] offsetArray = new int[offsets.size()];
+        for (int t = 0; t < offsetArray.length; t++) {
+            offsetArray[t] = offsets.get(t);
+        }
+        return new ParallelCounter.Kernel() {
+            public void count(int[] items, int start, int end, int weight,
+                              int[] counts) {
+                for (int t = 0; t < trieArray.length; t++) {
+                    trieArray[t].count(items, start, end, weight, counts,
+                                       offsetArray[t]);
+                }
+            }
+        };
+    }
+
+
+    /*
+    * Returns numCounts counters filled in by kernel from every stored basket,
+    * in one scan.
+    */
+    private int[] countCandidates(ParallelCounter.Kernel kernel,
+                                  int numCounts) {
+        if (parallelCounter != null) {
+            return parallelCounter.count(this, numCounts, kernel);
+        }
+        final ParallelCounter.Kernel sequentialKernel = kernel;
+        final int[] counts = new int[numCounts];
+        scan(new TransactionVisitor() {
+            public void visit(int[] items, int start, int end, int weight) {
+                sequentialKernel.count(items, start, end, weight, counts);
+            }
+        });
+        return counts;
+    }
+
+
+    /*
+    * Returns the negative border of frequentItemsets, which must hold every
+    * subset of its itemsets: the itemsets that are not in it but all of
+    * whose subsets are.
+    */
+    private List<Itemset> negativeBorder(Set<Itemset> frequentItemsets) {
+        List<Itemset> border = new ArrayList<Itemset>();
+        for (int item = 0; item < dictionary.size(); item++) {
+            if (!frequentItemsets.contains(Itemset.of(item))) {
+                border.add(Itemset.of(item));
+            }
+        }
+        List<Itemset> sorted = new ArrayList<Itemset>(frequentItemsets);
+        Collections.sort(sorted);
+        int first = 0;
+        while (first < sorted.size()) {
+            int k = sorted.get(first).size();
+            List<int[]> largeKItemsets = new ArrayList<int[]>();
+            for (int i = first; i < sorted.size() &&
+                                sorted.get(i).size() == k; i++) {
+                largeKItemsets.add(sorted.get(i).toArray());
+            }
+            for (int[] candidate : aprioriGen(largeKItemsets, null)) {
+                Itemset itemset = new Itemset(candidate);
+                if (!frequentItemsets.contains(itemset)) {
+                    border.add(itemset);
+                }
+            }
+            first += largeKItemsets.size();
+        }
+        return border;
+    }
+
+
+    /*
+    * Counts candidates, which must be sorted, in one pass over every row of
+    * the CSV file datasetFilename, read with the options of the dataset.
+    */
+    private int[] countInFile(String datasetFilename,
+                              List<Itemset> candidates) throws Exception {
+        final ParallelCounter.Kernel kernel = candidateKernel(candidates);
+        final int[] counts = new int[candidates.size()];
+        final long[] numBaskets = new long[1];
+        CsvBasketReader csvReader =
+            new CsvBasketReader(datasetFilename, loadOptions.weightColumn);
+        csvReader.read(dictionary, new TransactionVisitor() {
+            public void visit(int[] basket, int start, int end, int weight) {
+                if (!loadOptions.includeEmptyBaskets && start == end) {
+                    return;
+                }
+                // Sorted and without repeated items, as addTransaction
+                // stores baskets.
+                Arrays.sort(basket, start, end);
+                int uniqueEnd = start;
+                for (int i = start; i < end; i++) {
+                    if (i == start || basket[i] != basket[i - 1]) {
+                        basket[uniqueEnd++] = basket[i];
+                    }
+                }
+                kernel.count(basket, start, uniqueEnd, weight, counts);
+                numBaskets[0]++;
+            }
+        }, loadOptions.threads);
+        metrics.addTransactionsScanned(numBaskets[0]);
+        return counts;
+    }
+
+
+    private void finish(MiningStep step) {
+        metrics.finish(step,
+                       itemsetCounts == null ? 0 : itemsetCounts.size());
+    }
+
+
+    private void addAll(Set<Itemset> answer, List<int[]> itemsets) {
+        for (int[] itemset : itemsets) {
+            answer.add(new Itemset(itemset));
+        }
+    }
+
+    /**
+    * aprioriGen method used by the apriori algorithm to generate candidates of
+    * length k based on candidates of length k-1. lKMinus1 must be sorted
+    * lexicographically, and the candidates come out sorted too. step, if not
+    * null, gets the number of candidates joined and pruned.
+    * Package-private so that benchmarks/ can time it on its own.
+    */
+    List<int[]> aprioriGen(List<int[]> lKMinus1, MiningStep step) {
+        List<int[]> candidateKItemsets = new ArrayList<int[]>();
+        int last = lKMinus1.isEmpty() ? 0 : lKMinus1.get(0).length - 1;
+        int joined = 0;
+        // The itemsets that share their first k-2 items are next to each
+        // other in lKMinus1, so only the pairs inside each such group are
+        // joined.
+        int groupStart = 0;
+        while (groupStart < lKMinus1.size()) {
+            int groupEnd = groupStart + 1;
+            while (groupEnd < lKMinus1.size() &&
+                   samePrefix(lKMinus1.get(groupStart),
+                              lKMinus1.get(groupEnd), last)) {
+                groupEnd++;
+            }
+            for (int i = groupStart; i < groupEnd; i++) {
+                int[] itemset1 = lKMinus1.get(i);
+                for (int j = i + 1; j < groupEnd; j++) {
+                    if (sameColumn(itemset1[last], lKMinus1.get(j)[last])) {
+                        // Can never occur together.
+                        continue;
+                    }
+                    // Join step.
+                    int[] candidate = Arrays.copyOf(itemset1, last + 2);
+                    candidate[last + 1] = lKMinus1.get(j)[last];
+                    joined++;
+                    // Prune step.
+                    if (pruneStep(lKMinus1, candidate)) {
+                        candidateKItemsets.add(candidate);
+                    }
+                }
+            }
+            groupStart = groupEnd;
+        }
+        if (step != null) {
+            step.candidatesGenerated = joined;
+            step.candidatesPruned = joined - candidateKItemsets.size();
+        }
+        return candidateKItemsets;
+    }
+
+
+    /*
+    * Returns whether every (k-1)-subset of candidate is in lKMinus1. The two
+    * subsets it was joined from are in it already, and the others are binary
+    * searched for in place, without building them.
+    */
+    private boolean pruneStep(List<int[]> lKMinus1, int[] candidate) {
+        for (int skip = 0; skip < candidate.length - 2; skip++) {
+            if (!containsWithout(lKMinus1, candidate, skip)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+    * Returns whether candidate without its item at index skip is in
+    * lKMinus1, which must be sorted lexicographically.
+    */
+    private static boolean containsWithout(List<int[]> lKMinus1,
+                                           int[] candidate, int skip) {
+        int low = 0;
+        int high = lKMinus1.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareWithout(candidate, skip,
+                                            lKMinus1.get(middle));
+            if (comparison > 0) {
+                low = middle + 1;
+            } else if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /*
+    * apriori-gen under LoadOptions.constraints, after the CAP algorithm of
+    * Ng, Lakshmanan, Han and Pang ("Exploratory Mining and Pruning
+    * Optimizations of Constrained Association Rules"). Returns, sorted, the
+    * candidate k-itemsets that
+    * - only hold allowedItems, the large items some rule may hold (a
+    *   succinct, anti-monotone constraint),
+    * - hold at most maxConsequentSize items that may only be on the RHS, as
+    *   these must all be in the consequent (anti-monotone), and
+    * - hold the required items and at least one item that may be on the RHS
+    *   (succinct and monotone), which an allowed rule is made of.
+    * Itemsets that fail the last test can only be the antecedent or the
+    * consequent of such a rule, and are counted later if they are (see
+    * countRuleParts).
+    *
+    * The last test is not anti-monotone, so the candidates are not joined
+    * from pairs of lKMinus1. Instead, every itemset of lKMinus1 is extended
+    * with every allowed item, and a candidate is only kept from the parent
+    * it has without its largest item whose removal leaves an itemset that
+    * passes all three tests (its canonical item), so that it is generated
+    * once. A candidate is pruned if one of its (k-1)-subsets that passes
+    * the tests is not in lKMinus1. On firstPass, the smallest itemsets that
+    * pass the tests, which have no such subset, are added: the required
+    * items themselves, or with one item that may be on the RHS.
+    */
+    private List<int[]> constrainedGen(List<int[]> lKMinus1,
+                                       int[] allowedItems, int k,
+                                       boolean firstPass, MiningStep step) {
+        ItemConstraints constraints = loadOptions.constraints;
+        List<int[]> candidateKItemsets = new ArrayList<int[]>();
+        int generated = 0;
+        for (int[] itemset : lKMinus1) {
+            for (int item : allowedItems) {
+                if (Arrays.binarySearch(itemset, item) >= 0 ||
+                    sameColumnAsAny(item, itemset)) {
+                    continue;
+                }
+                int[] candidate = Arrays.copyOf(itemset, k);
+                candidate[k - 1] = item;
+                Arrays.sort(candidate);
+                if (canonicalItem(candidate) != item) {
+                    // Generated from another itemset of lKMinus1.
+                    continue;
+                }
+                generated++;
+                if (rhsOnlyItems(candidate) <=
+                        constraints.maxConsequentSize &&
+                    constrainedPruneStep(lKMinus1, candidate)) {
+                    candidateKItemsets.add(candidate);
+                }
+            }
+        }
+        int[] required = constraints.getRequiredItems();
+        if (firstPass && required.length > 0) {
+            List<int[]> smallest = new ArrayList<int[]>();
+            if (required.length == k) {
+                smallest.add(required);
+            } else {
+                for (int item : allowedItems) {
+                    if (constraints.canBeRhs(item) &&
+                        Arrays.binarySearch(required, item) < 0 &&
+                        !sameColumnAsAny(item, required)) {
+                        int[] candidate = Arrays.copyOf(required, k);
+                        candidate[k - 1] = item;
+                        Arrays.sort(candidate);
+                        smallest.add(candidate);
+                    }
+                }
+            }
+            for (int[] candidate : smallest) {
+                generated++;
+                boolean allowed = rhsOnlyItems(candidate) <=
+                                  constraints.maxConsequentSize;
+                for (int i = 0; i < candidate.length && allowed; i++) {
+                    allowed = Arrays.binarySearch(allowedItems,
+                                                  candidate[i]) >= 0;
+                }
+                if (allowed) {
+                    candidateKItemsets.add(candidate);
+                }
+            }
+        }
+        Collections.sort(candidateKItemsets, new Comparator<int[]>() {
+            public int compare(int[] candidate1, int[] candidate2) {
+                return Arrays.compare(candidate1, candidate2);
+            }
+        });
+        step.candidatesGenerated = generated;
+        step.candidatesPruned = generated - candidateKItemsets.size();
+        return candidateKItemsets;
+    }
+
+
+    /*
+    * Returns whether every (k-1)-subset of candidate that holds the required
+    * items and an item that may be on the RHS is in lKMinus1.
+    */
+    private boolean constrainedPruneStep(List<int[]> lKMinus1,
+                                         int[] candidate) {
+        ItemConstraints constraints = loadOptions.constraints;
+        int rhsItems = 0;
+        for (int item : candidate) {
+            if (constraints.canBeRhs(item)) {
+                rhsItems++;
+            }
+        }
+        for (int skip = 0; skip < candidate.length; skip++) {
+            int item = candidate[skip];
+            boolean subsetPasses = !constraints.isRequired(item) &&
+                rhsItems - (constraints.canBeRhs(item) ? 1 : 0) > 0;
+            if (subsetPasses && !containsWithout(lKMinus1, candidate, skip)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+    * Returns the largest item of itemset whose removal leaves the required
+    * items and an item that may be on the RHS, or -1 if there is none.
+    */
+    private int canonicalItem(int[] itemset) {
+        ItemConstraints constraints = loadOptions.constraints;
+        int rhsItems = 0;
+        for (int item : itemset) {
+            if (constraints.canBeRhs(item)) {
+                rhsItems++;
+            }
+        }
+        for (int i = itemset.length - 1; i >= 0; i--) {
+            int item = itemset[i];
+            if (!constraints.isRequired(item) &&
+                rhsItems - (constraints.canBeRhs(item) ? 1 : 0) > 0) {
+                return item;
+            }
+        }
+        return -1;
+    }
+
+
+    private int rhsOnlyItems(int[] itemset) {
+        ItemConstraints constraints = loadOptions.constraints;
+        int rhsOnly = 0;
+        for (int item : itemset) {
+            if (!constraints.canBeLhs(item)) {
+                rhsOnly++;
+            }
+        }
+        return rhsOnly;
+    }
+
+
+    private boolean sameColumnAsAny(int item, int[] itemset) {
+        for (int other : itemset) {
+            if (sameColumn(item, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /*
+    * Returns the sorted ids of the large items that some rule allowed by
+    * LoadOptions.constraints may hold.
+    */
+    private int[] allowedItems(List<int[]> large1Itemsets) {
+        int[] allowed = new int[large1Itemsets.size()];
+        int numAllowed = 0;
+        for (int[] itemset : large1Itemsets) {
+            if (loadOptions.constraints.allowsItem(itemset[0])) {
+                allowed[numAllowed++] = itemset[0];
+            }
+        }
+        return Arrays.copyOf(allowed, numAllowed);
+    }
+
+
+    /*
+    * Returns the large 1-itemsets that pass the tests of constrainedGen,
+    * from which the second pass is generated: the required item, if there
+    * is one and it may be on the RHS, or else every allowed item that may be
+    * on the RHS if no item is required.
+    */
+    private List<int[]> constrainedLarge1Itemsets(List<int[]> large1Itemsets,
+                                                  int[] allowedItems) {
+        ItemConstraints constraints = loadOptions.constraints;
+        int[] required = constraints.getRequiredItems();
+        List<int[]> result = new ArrayList<int[]>();
+        if (required.length > 1) {
+            return result;
+        }
+        for (int item : allowedItems) {
+            if (constraints.canBeRhs(item) &&
+                (required.length == 0 || required[0] == item)) {
+                result.add(new int[] {item});
+            }
+        }
+        return result;
+    }
+
+
+    /*
+    * Returns the pass whose candidates are the smallest itemsets that hold
+    * the required items and an item that may be on the RHS, or 1 if these
+    * are large 1-itemsets (see constrainedLarge1Itemsets).
+    */
+    private int firstConstrainedPass() {
+        ItemConstraints constraints = loadOptions.constraints;
+        int[] required = constraints.getRequiredItems();
+        for (int item : required) {
+            if (constraints.canBeRhs(item)) {
+                return Math.max(1, required.length);
+            }
+        }
+        return required.length + 1;
+    }
+
+
+    /*
+    * Adds to itemsetCounts the supports that the rules of the itemsets mined
+    * under LoadOptions.constraints need but that were not counted while
+    * mining, in one more scan: the antecedent and the consequent of every
+    * rule RuleGenerator may try on them. They are subsets of frequent
+    * itemsets, so they are all frequent.
+    */
+    private void countRuleParts(Set<Itemset> frequentItemsets) {
+        MiningStep step = metrics.start("rule parts", 0);
+        ItemConstraints constraints = loadOptions.constraints;
+        Set<Itemset> parts = new HashSet<Itemset>();
+        for (Itemset itemset : frequentItemsets) {
+            if (!constraints.allowsItemset(itemset)) {
+                continue;
+            }
+            int[] rhsItems = new int[itemset.size()];
+            int numRhsItems = 0;
+            for (int i = 0; i < itemset.size(); i++) {
+                if (constraints.canBeRhs(itemset.get(i))) {
+                    rhsItems[numRhsItems++] = itemset.get(i);
+                }
+            }
+            addRuleParts(itemset, Arrays.copyOf(rhsItems, numRhsItems), 0,
+                         new int[0], parts);
+        }
+        List<Itemset> candidates = new ArrayList<Itemset>(parts);
+        Collections.sort(candidates);
+        int[] counts = countItemsets(candidates);
+        for (int c = 0; c < candidates.size(); c++) {
+            itemsetCounts.putCount(candidates.get(c), counts[c]);
+        }
+        step.candidatesGenerated = candidates.size();
+        step.candidatesSurviving = candidates.size();
+        finish(step);
+    }
+
+
+    /*
+    * Adds to parts the consequents that extend consequent with items of
+    * rhsItems from index from on, up to LoadOptions.constraints
+    * .maxConsequentSize items, and their antecedents in itemset, that have
+    * no count yet.
+    */
+    private void addRuleParts(Itemset itemset, int[] rhsItems, int from,
+                              int[] consequent, Set<Itemset> parts) {
+        if (consequent.length == loadOptions.constraints.maxConsequentSize) {
+            return;
+        }
+        for (int r = from; r < rhsItems.length; r++) {
+            int[] extended = Arrays.copyOf(consequent, consequent.length + 1);
+            extended[consequent.length] = rhsItems[r];
+            if (extended.length < itemset.size()) {
+                int[] antecedent = new int[itemset.size() - extended.length];
+                int a = 0;
+                int c = 0;
+                for (int i = 0; i < itemset.size(); i++) {
+                    if (c < extended.length && itemset.get(i) == extended[c]) {
+                        c++;
+                    } else {
+                        antecedent[a++] = itemset.get(i);
+                    }
+                }
+                addUncounted(new Itemset(antecedent), parts);
+                addUncounted(new Itemset(extended), parts);
+            }
+            addRuleParts(itemset, rhsItems, r + 1, extended, parts);
+        }
+    }
+
+
+    private void addUncounted(Itemset itemset, Set<Itemset> parts) {
+        if (itemsetCounts.getCount(itemset) == -1) {
+            parts.add(itemset);
+        }
+    }
+
+
+    /*
+    * Returns the counts of candidates, which must be sorted, in one scan of
+    * the baskets, or of every shard with LoadOptions.workers.
+    */
+    private int[] countItemsets(List<Itemset> candidates) {
+        if (countDistribution == null) {
+            return countCandidates(candidateKernel(candidates),
+                                   candidates.size());
+        }
+        int[] counts = new int[candidates.size()];
+        int first = 0;
+        while (first < candidates.size()) {
+            int k = candidates.get(first).size();
+            List<int[]> sameLength = new ArrayList<int[]>();
+            for (int c = first; c < candidates.size() &&
+                                candidates.get(c).size() == k; c++) {
+                sameLength.add(candidates.get(c).toArray());
+            }
+            int[] sameLengthCounts =
+                countDistribution.countCandidates(sameLength);
+            System.arraycopy(sameLengthCounts, 0, counts, first,
+                             sameLength.size());
+            first += sameLength.size();
+        }
+        return counts;
+    }
+
+
+    private boolean sameColumn(int item1, int item2) {
+        return itemColumns != null && itemColumns[item1] >= 0 &&
+               itemColumns[item1] == itemColumns[item2];
+    }
+
+
+    /*
+    * In categorical mode, assigns a column to every item of the dictionary
+    * that does not have one yet: the column named before the first ':' of
+    * the item, or the longest of loadOptions.columns it starts with followed
+    * by ':'. A leading quote is ignored.
+    */
+    private void updateItemColumns() {
+        if (loadOptions == null || !loadOptions.categorical) {
+            return;
+        }
+        int first = itemColumns == null ? 0 : itemColumns.length;
+        itemColumns = itemColumns == null
+                      ? new int[dictionary.size()]
+                      : Arrays.copyOf(itemColumns, dictionary.size());
+        for (int item = first; item < dictionary.size(); item++) {
+            String value = dictionary.decode(item);
+            if (value.startsWith("\"")) {
+                value = value.substring(1);
+            }
+            String column = null;
+            if (loadOptions.columns == null) {
+                int colon = value.indexOf(':');
+                if (colon > 0) {
+                    column = value.substring(0, colon);
+                }
+            } else {
+                for (String name : loadOptions.columns) {
+                    if (value.startsWith(name + ":") &&
+                        (column == null || name.length() > column.length())) {
+                        column = name;
+                    }
+                }
+            }
+            if (column == null) {
+                itemColumns[item] = -1;
+                continue;
+            }
+            Integer columnId = columnIds.get(column);
+            if (columnId == null) {
+                columnId = columnIds.size();
+                columnIds.put(column, columnId);
+            }
+            itemColumns[item] = columnId;
+        }
+    }
+
+
+    private static boolean samePrefix(int[] itemset1, int[] itemset2,
+                                      int length) {
+        for (int i = 0; i < length; i++) {
+            if (itemset1[i] != itemset2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+    * Compares candidate without its item at index skip to itemset,
+    * lexicographically.
+    */
+    private static int compareWithout(int[] candidate, int skip,
+                                      int[] itemset) {
+        for (int i = 0; i < itemset.length; i++) {
+            int item = candidate[i < skip ? i : i + 1];
+            if (item != itemset[i]) {
+                return item < itemset[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+
+    /*
+    * Returns the number of pair hash buckets of DHP: one per pair of item ids
+    * when there are few items, and 2^20 otherwise.
+    */
+    private int numPairBuckets() {
+        long numPairs = (long)dictionary.size() * dictionary.size();
+        return (int)Math.max(1, Math.min(numPairs, 1 << 20));
+    }
+
+
+    /*
+    * Returns the bucket of the pair of items first < second, out of
+    * numBuckets, which is exact when numBuckets is numItems^2.
+    */
+    private static int pairBucket(int first, int second, int numItems,
+                                  int numBuckets) {
+        long pair = (long)first * numItems + second;
+        if (pair < numBuckets) {
+            return (int)pair;
+        }
+        return (int)(((pair * 0x9E3779B97F4A7C15L) >>> 32) % numBuckets);
+    }
+
+
+    /*
+    * Returns a kernel that counts every item into counts[item] and every
+    * pair of items of a basket into counts[numItems + bucket], for the first
+    * pass of DHP.
+    */
+    private ParallelCounter.Kernel pairBucketKernel(final int numItems) {
+        final int numBuckets = numPairBuckets();
+        return new ParallelCounter.Kernel() {
+            public void count(int[] items, int start, int end, int weight,
+                              int[] counts) {
+                for (int i = start; i < end; i++) {
+                    counts[items[i]] += weight;
+                    for (int j = i + 1; j < end; j++) {
+                        counts[numItems + pairBucket(
+                            items[i], items[j], numItems, numBuckets)] +=
+                            weight;
+                    }
+                }
+            }
+        };
+    }
+
+
+    /*
+    * Returns the candidate pairs whose hash bucket reaches minCount. The
+    * count of a bucket is at least that of every pair in it, so the others
+    * cannot be frequent.
+    */
+    private List<int[]> prunePairs(List<int[]> candidatePairs,
+                                   int[] pairBucketCounts, int minCount) {
+        int numItems = dictionary.size();
+        List<int[]> kept = new ArrayList<int[]>();
+        for (int[] pair : candidatePairs) {
+            if (pairBucketCounts[pairBucket(pair[0], pair[1], numItems,
+                                            pairBucketCounts.length)] >=
+                minCount) {
+                kept.add(pair);
+            }
+        }
+        return kept;
+    }
+
+
+    /*
+    * Returns an empty table for the itemset counts of a new run, within the
+    * memory limit of the load options.
+    */
+    private SupportCountTable newCountTable() {
+        return new SupportCountTable(loadOptions.maxCountBytes);
+    }
+
+
+    /*
+    * Returns the large 1-itemsets in id order, given the count of every item
+    * indexed by item id.
+    */
+    private List<int[]> getLarge1Itemsets(int[] itemCounts, int minCount) {
+        List<int[]> large1Itemsets = new ArrayList<int[]>();
+        for (int item = 0; item < itemCounts.length; item++) {
+            if (itemCounts[item] >= minCount) {
+                itemsetCounts.putCount(Itemset.of(item), itemCounts[item]);
+                large1Itemsets.add(new int[] {item});
+            }
+        }
+        return large1Itemsets;
+    }
+
+
+    private void loadDataset(String datasetFilename,
+                             LoadOptions options) throws Exception {
+
+        if (options.sampleSize > 0) {
+            reservoir = new int[options.sampleSize][];
+            sampleRandom = new Random(options.sampleSeed);
+        }
+        readBaskets(datasetFilename, options);
+        if (reservoir != null) {
+            // Rows picked more than once share their basket array, which
+            // addTransaction sorts again harmlessly.
+            int sampleSize = (int)Math.min(reservoir.length, fileWeight);
+            for (int s = 0; s < sampleSize; s++) {
+                addTransaction(reservoir[s], 0, reservoir[s].length, 1);
+            }
+            sampled = fileWeight > reservoir.length;
+            reservoir = null;
+        }
+        if (spillFile != null) {
+            spillFile.finish();
+        }
+        checkSize();
+    }
+
+
+    /*
+    * Starts the workers of LoadOptions.workers, which load the baskets, and
+    * takes the dictionary and the size of the dataset from them.
+    */
+    private void loadShards(String datasetFilename,
+                            LoadOptions options) throws Exception {
+        if (!new File(datasetFilename).isFile()) {
+            throw new Exception("Error: dataset file not found.");
+        }
+        countDistribution = new CountDistribution(datasetFilename, options,
+                                                  dictionary, metrics);
+        numTransactions = countDistribution.getStoredSize();
+        totalWeight = countDistribution.getTotalWeight();
+        fileWeight = totalWeight;
+        checkSize();
+    }
+
+
+    private void checkSize() throws Exception {
+        if (numTransactions == 0) {
+            throw new Exception("Error: dataset file not found.");
+        }
+        if (this.size() < 1000) {
+            System.out.println("Warning: dataset has " + this.size() + " " +
+                               "rows, which is less than the minimum of 1000 " +
+                               "rows");
+            System.out.println("         required by the assignment's " +
+                               "instructions.");
+        }
+    }
+
+
+    /*
+    * Appends every basket of the CSV file datasetFilename to the dataset.
+    */
+    private void readBaskets(String datasetFilename,
+                             final LoadOptions options) throws Exception {
+        File datasetFile = new File(datasetFilename);
+        if (!datasetFile.isFile()) {
+            throw new Exception("Error: dataset file not found.");
+        }
+        CsvBasketReader csvReader =
+            new CsvBasketReader(datasetFilename, options.weightColumn);
+        csvReader.read(dictionary, basketAdder(options), options.threads);
+    }
+
+
+    /*
+    * Returns the visitor that adds the baskets read from a file to the
+    * dataset, or to the sample.
+    */
+    private TransactionVisitor basketAdder(final LoadOptions options) {
+        return new TransactionVisitor() {
+            public void visit(int[] basket, int start, int end, int weight) {
+                if (!options.includeEmptyBaskets && start == end) {
+                    return;
+                }
+                if (reservoir != null) {
+                    sampleTransaction(basket, start, end, weight);
+                } else {
+                    fileWeight += weight;
+                    addTransaction(basket, start, end, weight);
+                }
+            }
+        };
+    }
+
+
+    /*
+    * Offers each of the weight rows that basket[start..end) stands for to the
+    * sample (Algorithm R): row i of the file takes a random slot of the
+    * reservoir with probability size / (i + 1), so that once the whole file
+    * has been read every row is equally likely to be in it.
+    */
+    private void sampleTransaction(int[] basket, int start, int end,
+                                   int weight) {
+        int[] copy = null;
+        for (int w = 0; w < weight; w++) {
+            long slot = fileWeight < reservoir.length
+                        ? fileWeight : sampleRandom.nextLong(fileWeight + 1);
+            if (slot < reservoir.length) {
+                if (copy == null) {
+                    copy = Arrays.copyOfRange(basket, start, end);
+                }
+                reservoir[(int)slot] = copy;
+            }
+            fileWeight++;
+        }
+    }
+
+
+    /*
+    * Appends the ids basket[start..end) as a new transaction with the given
+    * weight, sorted and with repeated items dropped. Sorts basket in place.
+    */
+    private void addTransaction(int[] basket, int start, int end,
+                                int weight) {
+        if ((long)totalWeight + weight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Error: the total weight of the dataset is too large.");
+        }
+        Arrays.sort(basket, start, end);
+        if (spillFile != null) {
+            int uniqueEnd = start;
+            for (int i = start; i < end; i++) {
+                if (i == start || basket[i] != basket[i - 1]) {
+                    basket[uniqueEnd++] = basket[i];
+                }
+            }
+            try {
+                spillFile.append(basket, start, uniqueEnd, weight);
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                    "Error: could not write spill file.", e);
+            }
+            totalWeight += weight;
+            numTransactions++;
+            return;
+        }
+        if (weight != 1 && transactionWeights == null) {
+            transactionWeights = new int[transactionOffsets.length];
+            Arrays.fill(transactionWeights, 0, numTransactions, 1);
+        }
+        if (numTransactions + 2 > transactionOffsets.length) {
+            transactionOffsets =
+                Arrays.copyOf(transactionOffsets, 2 * transactionOffsets.length);
+            if (transactionWeights != null) {
+                transactionWeights = Arrays.copyOf(transactionWeights,
+                                                   transactionOffsets.length);
+            }
+        }
+        if (transactionWeights != null) {
+            transactionWeights[numTransactions] = weight;
+        }
+        totalWeight += weight;
+        int itemsEnd = transactionOffsets[numTransactions];
+        if (itemsEnd + end - start > transactionItems.length) {
+            transactionItems = Arrays.copyOf(
+                transactionItems,
+                Math.max(2 * transactionItems.length, itemsEnd + end - start));
+        }
+        for (int i = start; i < end; i++) {
+            if (i == start || basket[i] != basket[i - 1]) {
+                transactionItems[itemsEnd++] = basket[i];
+            }
+        }
+        numTransactions++;
+        transactionOffsets[numTransactions] = itemsEnd;
+    }
+
+
+    /*
+    * Replaces every group of identical baskets with a single basket whose
+    * weight is the sum of theirs, keeping the first of each group in place.
+    * Baskets are looked up in an open-addressing table of basket indexes.
+    */
+    private void collapseDuplicates() {
+        int[] table = new int[Integer.highestOneBit(
+            Math.max(2 * numTransactions, 2)) * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        int[] weights = new int[transactionOffsets.length];
+        int numKept = 0;
+        int itemsEnd = 0;
+        for (int t = 0; t < numTransactions; t++) {
+            int start = transactionOffsets[t];
+            int end = transactionOffsets[t + 1];
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + transactionItems[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] >= 0 &&
+                   !Arrays.equals(transactionItems, start, end,
+                                  transactionItems,
+                                  transactionOffsets[table[slot]],
+                                  transactionOffsets[table[slot] + 1])) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] >= 0) {
+                weights[table[slot]] += weight(t);
+                continue;
+            }
+            // Move the basket down to position numKept. Kept baskets never
+            // move up, so the baskets still to be read are not overwritten.
+            System.arraycopy(transactionItems, start, transactionItems,
+                             itemsEnd, end - start);
+            transactionOffsets[numKept] = itemsEnd;
+            itemsEnd += end - start;
+            transactionOffsets[numKept + 1] = itemsEnd;
+            weights[numKept] = weight(t);
+            table[slot] = numKept;
+            numKept++;
         }
+        numTransactions = numKept;
+        transactionWeights = weights;
     }
 }
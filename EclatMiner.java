@@ -0,0 +1,190 @@
+import java.util.*;
+
+/**
+* The vertical (Eclat) mining engine. Instead of scanning the baskets once per
+* itemset length like apriori, it turns the dataset into one tid-set per large
+* item once (see Dataset.verticalLayout) and finds the support of every longer
+* itemset depth-first by intersecting the tid-sets of two of its prefixes.
+*
+* In categorical mode, two items of the same column are never combined, as
+* their intersection is known to be empty.
+*
+* The extensions of an itemset whose tid-sets are all bitsets are counted
+* together first (see BitsetCounter), and only those that turn out frequent
+* are intersected, so no tid-set is built for an infrequent itemset. This is
+* given up when most extensions turn out frequent anyway.
+*/
+public class EclatMiner {
+    // Extensions to count together before deciding whether it pays off.
+    private static final int MIN_COUNTED = 1024;
+
+    private int minCount;
+    private Map<Itemset, Integer> itemsetCounts;
+    // Column of every item id (-1 for none), or null if not categorical.
+    private int[] itemColumns;
+    private BitsetCounter bitsetCounter;
+    // Extensions counted together so far (see countBitsetExtensions), and
+    // those of them found infrequent.
+    private long numCounted = 0;
+    private long numPruned = 0;
+    private List<Itemset> frequentItemsets = new ArrayList<Itemset>();
+
+
+    /**
+    * minCount is the count that itemsets of two or more items must reach.
+    * Counts of the frequent itemsets found are put into itemsetCounts.
+    */
+    public EclatMiner(int minCount, Map<Itemset, Integer> itemsetCounts) {
+        this(minCount, itemsetCounts, null);
+    }
+
+
+    /**
+    * Same as EclatMiner(minCount, itemsetCounts), for a categorical dataset
+    * where itemColumns holds the column of every item id (-1 for none).
+    */
+    public EclatMiner(int minCount, Map<Itemset, Integer> itemsetCounts,
+                      int[] itemColumns) {
+        this(minCount, itemsetCounts, itemColumns,
+             BitsetCounter.create(false));
+    }
+
+
+    /**
+    * Same as EclatMiner(minCount, itemsetCounts, itemColumns), with the
+    * supports of bitsets counted by bitsetCounter.
+    */
+    public EclatMiner(int minCount, Map<Itemset, Integer> itemsetCounts,
+                      int[] itemColumns, BitsetCounter bitsetCounter) {
+        this.minCount = minCount;
+        this.itemsetCounts = itemsetCounts;
+        this.itemColumns = itemColumns;
+        this.bitsetCounter = bitsetCounter;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns all frequent itemsets given the tid-sets of the large items
+    * (null for every other item), sorted the way apriori returns them.
+    */
+    public Set<Itemset> mine(TidSet[] itemTidSets) {
+        int[] items = new int[itemTidSets.length];
+        TidSet[] tidSets = new TidSet[itemTidSets.length];
+        int n = 0;
+        for (int item = 0; item < itemTidSets.length; item++) {
+            if (itemTidSets[item] != null) {
+                items[n] = item;
+                tidSets[n] = itemTidSets[item];
+                n++;
+            }
+        }
+        extend(new int[0], items, tidSets, n);
+
+        Collections.sort(frequentItemsets);
+        return new LinkedHashSet<Itemset>(frequentItemsets);
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Records prefix + items[i] for each of the n items (all of which are
+    * frequent) and recurses into the frequent extensions of each of them.
+    * items are sorted, and tidSets[i] is the tid-set of prefix + items[i].
+    */
+    private void extend(int[] prefix, int[] items, TidSet[] tidSets, int n) {
+        for (int i = 0; i < n; i++) {
+            int[] itemset = Arrays.copyOf(prefix, prefix.length + 1);
+            itemset[prefix.length] = items[i];
+            Itemset frequentItemset = new Itemset(itemset);
+            itemsetCounts.put(frequentItemset, tidSets[i].support());
+            frequentItemsets.add(frequentItemset);
+
+            int[] supports = tidSets[i].unweightedBitset() == null
+                ? null : countBitsetExtensions(items, tidSets, i, n);
+            int[] childItems = new int[n - i - 1];
+            TidSet[] childTidSets = new TidSet[n - i - 1];
+            int numChildren = 0;
+            for (int j = i + 1; j < n; j++) {
+                if (excluded(items, i, j) ||
+                    (supports != null && supports[j] >= 0 &&
+                     supports[j] < minCount)) {
+                    continue;
+                }
+                TidSet intersection = tidSets[i].intersect(tidSets[j]);
+                if (intersection.support() >= minCount) {
+                    childItems[numChildren] = items[j];
+                    childTidSets[numChildren] = intersection;
+                    numChildren++;
+                }
+            }
+            if (numChildren > 0) {
+                extend(itemset, childItems, childTidSets, numChildren);
+            }
+        }
+    }
+
+
+    /*
+    * Whether items[i] and items[j] are values of the same column, in
+    * categorical mode.
+    */
+    private boolean excluded(int[] items, int i, int j) {
+        return itemColumns != null && itemColumns[items[i]] >= 0 &&
+               itemColumns[items[i]] == itemColumns[items[j]];
+    }
+
+
+    /*
+    * Returns the support of the extension of tidSets[i] by items[j], indexed
+    * by j, for every j above i whose tid-set is an unweighted bitset like
+    * that of i, and -1 for the others. Returns null if tidSets[i] is not such
+    * a bitset, or if there are fewer than two extensions to count together.
+    *
+    * Counting first only saves work for the extensions that turn out
+    * infrequent, as the others are intersected afterwards anyway, so it is
+    * given up for the rest of the run once a quarter or less of the first
+    * extensions counted were infrequent.
+    */
+    private int[] countBitsetExtensions(int[] items, TidSet[] tidSets, int i,
+                                        int n) {
+        long[] prefix = tidSets[i].unweightedBitset();
+        if (prefix == null) {
+            return null;
+        }
+        long[][] others = new long[n - i - 1][];
+        int[] indexes = new int[n - i - 1];
+        int numOthers = 0;
+        if (numCounted >= MIN_COUNTED && 4 * numPruned <= numCounted) {
+            return null;
+        }
+        for (int j = i + 1; j < n; j++) {
+            long[] other = tidSets[j].unweightedBitset();
+            if (other != null && other.length == prefix.length &&
+                !excluded(items, i, j)) {
+                others[numOthers] = other;
+                indexes[numOthers] = j;
+                numOthers++;
+            }
+        }
+        if (numOthers < 2) {
+            return null;
+        }
+        int[] counts = new int[numOthers];
+        bitsetCounter.countIntersections(prefix, others, numOthers, counts);
+        int[] supports = new int[n];
+        Arrays.fill(supports, -1);
+        for (int o = 0; o < numOthers; o++) {
+            supports[indexes[o]] = counts[o];
+            if (counts[o] < minCount) {
+                numPruned++;
+            }
+        }
+        numCounted += numOthers;
+        return supports;
+    }
+}
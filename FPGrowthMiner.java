@@ -0,0 +1,288 @@
+import java.util.*;
+
+/**
+* The FP-Growth mining engine (Han, Pei and Yin, "Mining Frequent Patterns
+* without Candidate Generation"). The large items are counted in a first scan
+* and every basket is inserted into a compact prefix tree (the FP-tree) in a
+* second one. The frequent itemsets are then mined from the tree recursively,
+* through conditional FP-trees, without generating candidates or scanning the
+* baskets again.
+*/
+public class FPGrowthMiner {
+    private int minCount;
+    private Map<Itemset, Integer> itemsetCounts;
+    private List<Itemset> frequentItemsets = new ArrayList<Itemset>();
+
+
+    /**
+    * minCount is the count that itemsets of two or more items must reach.
+    * Counts of the frequent itemsets found are put into itemsetCounts.
+    */
+    public FPGrowthMiner(int minCount, Map<Itemset, Integer> itemsetCounts) {
+        this.minCount = minCount;
+        this.itemsetCounts = itemsetCounts;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns all frequent itemsets of dataset, sorted the way apriori returns
+    * them. itemCounts holds the count of every item id (the first scan), and
+    * items with a count below minItemCount are left out of the tree.
+    */
+    public Set<Itemset> mine(Dataset dataset, final int[] itemCounts,
+                             int minItemCount) {
+        // Large items in order of decreasing count, which is the order in
+        // which they appear on the paths of the tree.
+        List<Integer> largeItems = new ArrayList<Integer>();
+        for (int item = 0; item < itemCounts.length; item++) {
+            if (itemCounts[item] >= minItemCount) {
+                largeItems.add(item);
+            }
+        }
+        Collections.sort(largeItems, new Comparator<Integer>() {
+            public int compare(Integer item1, Integer item2) {
+                if (itemCounts[item1] != itemCounts[item2]) {
+                    return itemCounts[item2] - itemCounts[item1];
+                }
+                return item1 - item2;
+            }
+        });
+        int[] itemIds = new int[largeItems.size()];
+        final int[] rankOfItem = new int[itemCounts.length];
+        Arrays.fill(rankOfItem, -1);
+        for (int rank = 0; rank < itemIds.length; rank++) {
+            itemIds[rank] = largeItems.get(rank);
+            rankOfItem[itemIds[rank]] = rank;
+        }
+
+        // Second scan: insert the large items of every basket.
+        final FPTree tree = new FPTree(itemIds);
+        dataset.scan(new TransactionVisitor() {
+            int[] path = new int[16];
+
+            public void visit(int[] items, int start, int end, int weight) {
+                if (path.length < end - start) {
+                    path = new int[end - start];
+                }
+                int pathLength = 0;
+                for (int i = start; i < end; i++) {
+                    if (rankOfItem[items[i]] >= 0) {
+                        path[pathLength++] = rankOfItem[items[i]];
+                    }
+                }
+                Arrays.sort(path, 0, pathLength);
+                tree.insert(path, pathLength, weight);
+            }
+        });
+
+        growth(tree, new int[0]);
+
+        Collections.sort(frequentItemsets);
+        return new LinkedHashSet<Itemset>(frequentItemsets);
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Records suffix + i for every item i of tree, and mines the conditional
+    * tree of each of these itemsets. Every item in tree is frequent given
+    * suffix.
+    */
+    private void growth(FPTree tree, int[] suffix) {
+        for (int rank = tree.numItems() - 1; rank >= 0; rank--) {
+            int[] itemset = Arrays.copyOf(suffix, suffix.length + 1);
+            itemset[suffix.length] = tree.itemId(rank);
+            Itemset frequentItemset = Itemset.of(itemset);
+            itemsetCounts.put(frequentItemset, tree.itemCount(rank));
+            frequentItemsets.add(frequentItemset);
+
+            FPTree conditionalTree = conditionalTree(tree, rank);
+            if (conditionalTree.numItems() > 0) {
+                growth(conditionalTree, itemset);
+            }
+        }
+    }
+
+
+    /*
+    * Builds the FP-tree of the conditional pattern base of the item with the
+    * given rank: the prefix paths of all of its nodes, each with the count of
+    * the node. Items that are not frequent in the base are left out.
+    */
+    private FPTree conditionalTree(FPTree tree, int rank) {
+        final int[] counts = new int[rank];
+        for (int node = tree.firstNode(rank); node >= 0;
+             node = tree.nextNode(node)) {
+            int nodeCount = tree.count(node);
+            for (int parent = tree.parent(node); parent > 0;
+                 parent = tree.parent(parent)) {
+                counts[tree.rank(parent)] += nodeCount;
+            }
+        }
+        List<Integer> largeRanks = new ArrayList<Integer>();
+        for (int parentRank = 0; parentRank < rank; parentRank++) {
+            if (counts[parentRank] >= minCount) {
+                largeRanks.add(parentRank);
+            }
+        }
+        Collections.sort(largeRanks, new Comparator<Integer>() {
+            public int compare(Integer rank1, Integer rank2) {
+                if (counts[rank1] != counts[rank2]) {
+                    return counts[rank2] - counts[rank1];
+                }
+                return rank1 - rank2;
+            }
+        });
+        int[] itemIds = new int[largeRanks.size()];
+        int[] newRank = new int[rank];
+        Arrays.fill(newRank, -1);
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = tree.itemId(largeRanks.get(i));
+            newRank[largeRanks.get(i)] = i;
+        }
+
+        FPTree conditionalTree = new FPTree(itemIds);
+        if (itemIds.length == 0) {
+            return conditionalTree;
+        }
+        int[] path = new int[rank];
+        for (int node = tree.firstNode(rank); node >= 0;
+             node = tree.nextNode(node)) {
+            int pathLength = 0;
+            for (int parent = tree.parent(node); parent > 0;
+                 parent = tree.parent(parent)) {
+                if (newRank[tree.rank(parent)] >= 0) {
+                    path[pathLength++] = newRank[tree.rank(parent)];
+                }
+            }
+            Arrays.sort(path, 0, pathLength);
+            conditionalTree.insert(path, pathLength, tree.count(node));
+        }
+        return conditionalTree;
+    }
+}
+
+
+/**
+* An FP-tree stored in flat arrays. Items are identified by their rank (0 for
+* the most frequent one), paths from the root go through increasing ranks, and
+* the nodes of every item are chained together through node links. Node 0 is
+* the root.
+*/
+class FPTree {
+    private int[] itemIds;
+    private int[] itemCounts;
+    private int[] firstNode;
+
+    private int numNodes = 1;
+    private int[] nodeRank = new int[64];
+    private int[] nodeCount = new int[64];
+    private int[] nodeParent = new int[64];
+    private int[] nodeFirstChild = new int[64];
+    private int[] nodeSibling = new int[64];
+    private int[] nodeNext = new int[64];
+
+
+    /**
+    * Creates an empty tree over the given items, where itemIds[r] is the item
+    * id of rank r.
+    */
+    public FPTree(int[] itemIds) {
+        this.itemIds = itemIds;
+        itemCounts = new int[itemIds.length];
+        firstNode = new int[itemIds.length];
+        Arrays.fill(firstNode, -1);
+        nodeFirstChild[0] = -1;
+        nodeSibling[0] = -1;
+    }
+
+
+    /**
+    * Inserts path[0..length), which must be sorted by rank, with the given
+    * count.
+    */
+    public void insert(int[] path, int length, int count) {
+        int node = 0;
+        for (int i = 0; i < length; i++) {
+            int rank = path[i];
+            itemCounts[rank] += count;
+            int child = nodeFirstChild[node];
+            while (child >= 0 && nodeRank[child] != rank) {
+                child = nodeSibling[child];
+            }
+            if (child < 0) {
+                child = newNode(rank, node);
+            }
+            nodeCount[child] += count;
+            node = child;
+        }
+    }
+
+
+    public int numItems() {
+        return itemIds.length;
+    }
+
+
+    public int itemId(int rank) {
+        return itemIds[rank];
+    }
+
+
+    public int itemCount(int rank) {
+        return itemCounts[rank];
+    }
+
+
+    public int firstNode(int rank) {
+        return firstNode[rank];
+    }
+
+
+    public int nextNode(int node) {
+        return nodeNext[node];
+    }
+
+
+    public int parent(int node) {
+        return nodeParent[node];
+    }
+
+
+    public int rank(int node) {
+        return nodeRank[node];
+    }
+
+
+    public int count(int node) {
+        return nodeCount[node];
+    }
+
+
+    private int newNode(int rank, int parent) {
+        if (numNodes == nodeRank.length) {
+            int capacity = 2 * numNodes;
+            nodeRank = Arrays.copyOf(nodeRank, capacity);
+            nodeCount = Arrays.copyOf(nodeCount, capacity);
+            nodeParent = Arrays.copyOf(nodeParent, capacity);
+            nodeFirstChild = Arrays.copyOf(nodeFirstChild, capacity);
+            nodeSibling = Arrays.copyOf(nodeSibling, capacity);
+            nodeNext = Arrays.copyOf(nodeNext, capacity);
+        }
+        int node = numNodes++;
+        nodeRank[node] = rank;
+        nodeCount[node] = 0;
+        nodeParent[node] = parent;
+        nodeFirstChild[node] = -1;
+        nodeSibling[node] = nodeFirstChild[parent];
+        nodeFirstChild[parent] = node;
+        nodeNext[node] = firstNode[rank];
+        firstNode[rank] = node;
+        return node;
+    }
+}
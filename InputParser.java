@@ -13,6 +13,36 @@ public class InputParser {
     private Dataset dataset = null;
     private double minSupport = -1;
     private double minConfidence = -1;
+    private String engine = "apriori";
+    private int partitions = 4;
+    private int threads = 1;
+    // Worker processes of Count Distribution, or 0 for none.
+    private int workers = 0;
+    private int weightColumn = -1;
+    private boolean collapseDuplicates = false;
+    private boolean streaming = false;
+    private boolean dhp = false;
+    private boolean simd = false;
+    private String spillDirectory = null;
+    private List<String> incrementFilenames = new ArrayList<String>();
+    private String snapshotFilename = null;
+    private boolean categorical = false;
+    private int maxConsequentSize = 1;
+    private int topK = 0;
+    private String outputMode = "all";
+    private List<String> columns = null;
+    private int sampleSize = 0;
+    private long sampleSeed = 1;
+    private boolean verifySample = false;
+    // The {min_sup, min_conf} pairs of --sweep, each written to its own
+    // output file along with the one of the command line.
+    private List<double[]> sweepSettings = new ArrayList<double[]>();
+    // Constraints on the items of the rules, or null if none was given.
+    private ItemConstraints constraints = null;
+    // Limit on the memory of the itemset counts in MB, or 0 for none.
+    private int countMemory = 0;
+    // Support the loaded snapshot was mined at, or -1 if none was loaded.
+    private double snapshotMinSupport = -1;
     private boolean argsInitialized = false;
     private boolean datasetLoaded = false;
 
@@ -53,12 +83,191 @@ public class InputParser {
     }
 
 
+    /**
+    * Returns the name of the engine that mines the frequent itemsets:
+    * "apriori" (the default), "eclat", "fpgrowth" or "partition".
+    */
+    public String getEngine() {
+        assertArgsInitialized();
+        return engine;
+    }
+
+
+    /**
+    * Returns the number of ranges the partition engine splits the baskets
+    * into (4 by default).
+    */
+    public int getPartitions() {
+        assertArgsInitialized();
+        return partitions;
+    }
+
+
+    /**
+    * Returns the number of threads that count supports (1 by default).
+    */
+    public int getThreads() {
+        assertArgsInitialized();
+        return threads;
+    }
+
+
+    /**
+    * Returns the number of worker processes that hold the shards of the
+    * file with --workers, or 0 if it is loaded by this process.
+    */
+    public int getWorkers() {
+        assertArgsInitialized();
+        return workers;
+    }
+
+
+    /**
+    * Returns the constraints given with --lhs, --rhs, --not-lhs, --not-rhs
+    * and --require, bound to the dictionary of the dataset, or null if there
+    * are none.
+    */
+    public ItemConstraints getConstraints() {
+        assertDatasetLoaded();
+        return constraints;
+    }
+
+
+    /**
+    * Returns the files of new baskets to add to the dataset after it has
+    * been mined, in the order they were given.
+    */
+    public List<String> getIncrementFilenames() {
+        assertArgsInitialized();
+        return incrementFilenames;
+    }
+
+
+    /**
+    * Returns the largest number of items on the right-hand side of a rule
+    * (1 by default).
+    */
+    public int getMaxConsequentSize() {
+        assertArgsInitialized();
+        return maxConsequentSize;
+    }
+
+
+    /**
+    * Returns which frequent itemsets are written: "all", "closed" or
+    * "maximal".
+    */
+    public String getOutputMode() {
+        assertArgsInitialized();
+        return outputMode;
+    }
+
+
+    /**
+    * Returns the number of rules asked for with --top-k, or 0 if rules are
+    * mined at min_sup as usual.
+    */
+    public int getTopK() {
+        assertArgsInitialized();
+        return topK;
+    }
+
+
+    /**
+    * Returns whether the itemsets mined from a --sample are to be checked
+    * against the whole file, which makes the result exact.
+    */
+    public boolean getVerifySample() {
+        assertArgsInitialized();
+        return verifySample;
+    }
+
+
+    /**
+    * Returns the {min_sup, min_conf} pairs given with --sweep, in order.
+    */
+    public List<double[]> getSweepSettings() {
+        assertArgsInitialized();
+        return sweepSettings;
+    }
+
+
+    /**
+    * Returns the file a --sweep setting is written to, such as
+    * output-0.02-0.5.txt for min_sup 0.02 and min_conf 0.5.
+    */
+    public static String sweepOutputFilename(double[] setting) {
+        return "output-" + setting[0] + "-" + setting[1] + ".txt";
+    }
+
+
+    /**
+    * Returns the lowest min_sup of the command line and of --sweep, which is
+    * the one to mine at.
+    */
+    public double getLowestMinSupport() {
+        assertArgsInitialized();
+        double lowest = minSupport;
+        for (double[] setting : sweepSettings) {
+            lowest = Math.min(lowest, setting[0]);
+        }
+        return lowest;
+    }
+
+
+    /**
+    * Returns the snapshot file given with --snapshot, or null.
+    */
+    public String getSnapshotFilename() {
+        assertArgsInitialized();
+        return snapshotFilename;
+    }
+
+
+    /**
+    * Returns whether the dataset was loaded from a snapshot whose itemset
+    * counts already hold the frequent itemsets at the lowest min_sup, so
+    * that mining can be skipped.
+    */
+    public boolean snapshotCoversMinSupport() {
+        assertDatasetLoaded();
+        return snapshotMinSupport >= 0 &&
+               getLowestMinSupport() >= snapshotMinSupport;
+    }
+
+
     public void validateAndParse(boolean includeEmptyBaskets) {
         try {
             validateArgLength();
             parseArgs();
+            parseOptions();
             argsInitialized = true;
-            dataset = new Dataset(getDatasetFilename(), includeEmptyBaskets);
+            LoadOptions loadOptions = new LoadOptions(includeEmptyBaskets);
+            loadOptions.threads = threads;
+            loadOptions.workers = workers;
+            loadOptions.weightColumn = weightColumn;
+            loadOptions.collapseDuplicates = collapseDuplicates;
+            loadOptions.streaming = streaming;
+            loadOptions.dhp = dhp;
+            loadOptions.simd = simd;
+            if (spillDirectory != null) {
+                loadOptions.spillDirectory = new File(spillDirectory);
+            }
+            loadOptions.categorical = categorical;
+            loadOptions.columns = columns;
+            loadOptions.sampleSize = sampleSize;
+            loadOptions.sampleSeed = sampleSeed;
+            loadOptions.maxCountBytes = (long)countMemory << 20;
+            loadOptions.constraints = constraints;
+            if (snapshotFilename != null) {
+                dataset = loadSnapshot(loadOptions);
+            }
+            if (dataset == null) {
+                dataset = new Dataset(getDatasetFilename(), loadOptions);
+            }
+            if (constraints != null) {
+                constraints.bind(dataset.getDictionary());
+            }
             datasetLoaded = true;
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -72,6 +281,101 @@ public class InputParser {
         System.out.println("Dataset filename: " + getDatasetFilename());
         System.out.println("Minimum support: " + getMinSupport());
         System.out.println("Minimum confidence: " + getMinConfidence());
+        System.out.println("Mining engine: " + getEngine());
+        if (engine.equals("partition")) {
+            System.out.println("Partitions: " + partitions);
+        }
+        System.out.println("Threads: " + getThreads());
+        if (workers > 0) {
+            System.out.println("Count workers: " + workers + " (one shard " +
+                               "of the file each)");
+        }
+        if (topK > 0) {
+            System.out.println("Top-k rules: " + topK + " (min_sup is only " +
+                               "a floor)");
+        }
+        if (!outputMode.equals("all")) {
+            System.out.println("Frequent itemsets written: " + outputMode);
+        }
+        for (double[] setting : sweepSettings) {
+            System.out.println("Sweep: min_sup=" + setting[0] +
+                               ", min_conf=" + setting[1] + " (written to " +
+                               sweepOutputFilename(setting) + ")");
+        }
+        if (maxConsequentSize > 1) {
+            System.out.println("Maximum consequent size: " +
+                               maxConsequentSize);
+        }
+        if (constraints != null) {
+            System.out.println("Item constraints: " + constraints);
+        }
+        if (weightColumn >= 0) {
+            System.out.println("Weight column: " + (weightColumn + 1));
+        }
+        if (collapseDuplicates) {
+            System.out.println("Identical baskets collapsed into " +
+                               getDataset().storedSize() + " weighted " +
+                               "baskets");
+        }
+        if (streaming) {
+            System.out.println("Streaming: baskets spilled to disk");
+        }
+        // Only eclat and partition count bitsets; closed or maximal output
+        // is mined with LCM, and --top-k with its own miner.
+        if (simd && ((!engine.equals("eclat") &&
+                      !engine.equals("partition")) ||
+                     !outputMode.equals("all") || topK > 0)) {
+            System.err.println("Warning: --simd only applies to the eclat " +
+                               "and partition engines, without --output or " +
+                               "--top-k; it has no effect on this run.");
+        } else if (simd) {
+            System.out.println("Bitset kernel: " +
+                               BitsetCounter.create(true).getName());
+            if (!BitsetCounter.isVectorAvailable()) {
+                System.err.println("Warning: --simd needs " +
+                                   "VectorBitsetCounter compiled and run " +
+                                   "with --add-modules " +
+                                   "jdk.incubator.vector; using the plain " +
+                                   "kernel.");
+            }
+        }
+        if (dhp) {
+            System.out.println("DHP: pair hash pruning" +
+                               (streaming ? "" : " and basket trimming"));
+        }
+        if (dhp && streaming) {
+            System.err.println("Warning: --dhp does not trim the baskets " +
+                               "with --streaming, which would keep a copy " +
+                               "of them in memory; only candidate pairs " +
+                               "are pruned.");
+        }
+        if (getDataset().isSampled()) {
+            System.out.println("Sample: " + getDataset().size() + " of " +
+                               getDataset().getFileWeight() + " rows (seed " +
+                               sampleSeed + ")" +
+                               (verifySample ? ", verified on the whole file"
+                                             : ""));
+        }
+        if (countMemory > 0) {
+            System.out.println("Itemset count memory limit: " + countMemory +
+                               " MB");
+        }
+        for (String incrementFilename : incrementFilenames) {
+            System.out.println("Increment filename: " + incrementFilename);
+        }
+        if (columns != null) {
+            System.out.println("Categorical columns: " + columns);
+        } else if (categorical) {
+            System.out.println("Categorical columns: taken from the " +
+                               "\"Column:\" prefix of every item");
+        }
+        if (snapshotMinSupport >= 0) {
+            System.out.println("Loaded snapshot " + snapshotFilename +
+                               " (mined at min_sup=" + snapshotMinSupport +
+                               ")");
+        } else if (snapshotFilename != null) {
+            System.out.println("Snapshot to write: " + snapshotFilename);
+        }
         System.out.println("==========================================");
     }
 
@@ -97,14 +401,54 @@ public class InputParser {
     }
 
 
+    /*
+    * Returns the dataset saved in the snapshot file, or null if there is no
+    * snapshot yet or it no longer matches the dataset file and options.
+    */
+    private Dataset loadSnapshot(LoadOptions loadOptions) {
+        File snapshotFile = new File(snapshotFilename);
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        try {
+            SnapshotFile snapshot = SnapshotFile.read(snapshotFile);
+            if (!snapshot.matches(new File(getDatasetFilename()),
+                                  loadOptions)) {
+                System.out.println("Snapshot " + snapshotFilename + " is " +
+                                   "out of date and will be rebuilt.");
+                return null;
+            }
+            snapshotMinSupport = snapshot.minSupport;
+            return new Dataset(snapshot, loadOptions);
+        } catch (IOException e) {
+            System.out.println("Snapshot " + snapshotFilename + " could not " +
+                               "be read and will be rebuilt.");
+            return null;
+        }
+    }
+
+
     private void validateArgLength() throws Exception {
-        if (args.length != 3) {
+        if (args.length < 3) {
             // throw new Exception(
             //     "Usage: java RuleMining <INTEGRATED-DATASET filename> " +
             //     "<min_sup> <min_conf>");
             throw new Exception(
                 "Usage: bash run.sh <INTEGRATED-DATASET filename> " +
-                "<min_sup> <min_conf>");
+                "<min_sup> <min_conf> " +
+                "[--engine=apriori|eclat|fpgrowth|partition] " +
+                "[--partitions=<n>] [--threads=<n>] [--weight-column=<n>] " +
+                "[--collapse-duplicates] [--streaming] " +
+                "[--spill-dir=<directory>] [--increment=<filename>]... " +
+                "[--snapshot=<filename>] [--categorical] " +
+                "[--columns=<name>,<name>,...] [--max-consequent=<n>] " +
+                "[--top-k=<k>] [--output=all|closed|maximal] " +
+                "[--sample=<rows>] [--sample-seed=<n>] [--verify-sample] " +
+                "[--count-memory=<MB>] [--dhp] [--simd] [--workers=<n>] " +
+                "[--sweep=<min_sup>:<min_conf>,<min_sup>:<min_conf>,...] " +
+                "[--lhs=<prefix>,...] [--rhs=<prefix>,...] " +
+                "[--not-lhs=<prefix>,...] [--not-rhs=<prefix>,...] " +
+                "[--require=<item>,...]");
         }
     }
 
@@ -125,4 +469,242 @@ public class InputParser {
             throw new Exception("Error: min_conf must be in the range [0, 1]");
         }
     }
+
+
+    private int parsePositiveInt(String name, String value) throws Exception {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (Exception e) {
+            throw new Exception("Error: " + name + " must be a number.");
+        }
+        if (result < 1) {
+            throw new Exception("Error: " + name + " must be at least 1");
+        }
+        return result;
+    }
+
+
+    /*
+    * Parses the optional "--name=value" arguments that follow min_conf.
+    */
+    private void parseOptions() throws Exception {
+        for (int i = 3; i < args.length; i++) {
+            String name = args[i];
+            String value = null;
+            int equalsIndex = args[i].indexOf('=');
+            if (equalsIndex >= 0) {
+                name = args[i].substring(0, equalsIndex);
+                value = args[i].substring(equalsIndex + 1);
+            }
+            if (name.equals("--engine")) {
+                if (!"apriori".equals(value) && !"eclat".equals(value) &&
+                    !"fpgrowth".equals(value) && !"partition".equals(value)) {
+                    throw new Exception("Error: --engine must be apriori, " +
+                                        "eclat, fpgrowth or partition");
+                }
+                engine = value;
+            } else if (name.equals("--partitions")) {
+                partitions = parsePositiveInt(name, value);
+            } else if (name.equals("--threads")) {
+                threads = parsePositiveInt(name, value);
+            } else if (name.equals("--workers")) {
+                workers = parsePositiveInt(name, value);
+            } else if (name.equals("--weight-column")) {
+                // Columns are numbered from 1 on the command line.
+                weightColumn = parsePositiveInt(name, value) - 1;
+            } else if (name.equals("--collapse-duplicates")) {
+                collapseDuplicates = true;
+            } else if (name.equals("--streaming")) {
+                streaming = true;
+            } else if (name.equals("--spill-dir")) {
+                if (value == null || !new File(value).isDirectory()) {
+                    throw new Exception("Error: --spill-dir must be an " +
+                                        "existing directory");
+                }
+                spillDirectory = value;
+                streaming = true;
+            } else if (name.equals("--increment")) {
+                if (value == null || !new File(value).isFile()) {
+                    throw new Exception("Error: increment file not found.");
+                }
+                incrementFilenames.add(value);
+            } else if (name.equals("--snapshot")) {
+                if (value == null || value.isEmpty()) {
+                    throw new Exception("Error: --snapshot needs a filename");
+                }
+                snapshotFilename = value;
+            } else if (name.equals("--output")) {
+                if (!"all".equals(value) && !"closed".equals(value) &&
+                    !"maximal".equals(value)) {
+                    throw new Exception("Error: --output must be all, " +
+                                        "closed or maximal");
+                }
+                outputMode = value;
+            } else if (name.equals("--top-k")) {
+                topK = parsePositiveInt(name, value);
+            } else if (name.equals("--max-consequent")) {
+                maxConsequentSize = parsePositiveInt(name, value);
+            } else if (name.equals("--sample")) {
+                sampleSize = parsePositiveInt(name, value);
+            } else if (name.equals("--sample-seed")) {
+                try {
+                    sampleSeed = Long.parseLong(value);
+                } catch (Exception e) {
+                    throw new Exception("Error: --sample-seed must be a " +
+                                        "number.");
+                }
+            } else if (name.equals("--verify-sample")) {
+                verifySample = true;
+            } else if (name.equals("--simd")) {
+                simd = true;
+            } else if (name.equals("--dhp")) {
+                dhp = true;
+            } else if (name.equals("--count-memory")) {
+                countMemory = parsePositiveInt(name, value);
+            } else if (name.equals("--sweep")) {
+                parseSweep(value);
+            } else if (name.equals("--lhs")) {
+                ItemConstraints itemConstraints = getOrCreateConstraints();
+                if (itemConstraints.lhsPrefixes == null) {
+                    itemConstraints.lhsPrefixes = new ArrayList<String>();
+                }
+                itemConstraints.lhsPrefixes.addAll(parseItemList(name, value));
+            } else if (name.equals("--rhs")) {
+                ItemConstraints itemConstraints = getOrCreateConstraints();
+                if (itemConstraints.rhsPrefixes == null) {
+                    itemConstraints.rhsPrefixes = new ArrayList<String>();
+                }
+                itemConstraints.rhsPrefixes.addAll(parseItemList(name, value));
+            } else if (name.equals("--not-lhs")) {
+                getOrCreateConstraints().lhsExcludedPrefixes.addAll(
+                    parseItemList(name, value));
+            } else if (name.equals("--not-rhs")) {
+                getOrCreateConstraints().rhsExcludedPrefixes.addAll(
+                    parseItemList(name, value));
+            } else if (name.equals("--require")) {
+                getOrCreateConstraints().requiredItems.addAll(
+                    parseItemList(name, value));
+            } else if (name.equals("--categorical")) {
+                categorical = true;
+            } else if (name.equals("--columns")) {
+                if (value == null || value.isEmpty()) {
+                    throw new Exception("Error: --columns needs column names");
+                }
+                columns = Arrays.asList(value.split(","));
+                categorical = true;
+            } else {
+                throw new Exception("Error: unknown option " + args[i]);
+            }
+        }
+        if (streaming && snapshotFilename != null) {
+            throw new Exception("Error: --snapshot cannot be used with " +
+                                "--streaming");
+        }
+        if (sampleSize > 0 && (snapshotFilename != null || topK > 0 ||
+                               !incrementFilenames.isEmpty())) {
+            throw new Exception("Error: --sample cannot be used with " +
+                                "--snapshot, --top-k or --increment");
+        }
+        if (verifySample && sampleSize == 0) {
+            throw new Exception("Error: --verify-sample needs --sample");
+        }
+        if (!sweepSettings.isEmpty() && (topK > 0 || sampleSize > 0)) {
+            throw new Exception("Error: --sweep cannot be used with --top-k " +
+                                "or --sample");
+        }
+        // Closed or maximal output is mined with LCM and --top-k with its
+        // own miner, whatever the engine.
+        if (!engine.equals("apriori") &&
+            (!outputMode.equals("all") || topK > 0)) {
+            throw new Exception("Error: --engine cannot be used with " +
+                                "--output or --top-k, which have their own " +
+                                "miners");
+        }
+        // DHP is part of apriori.
+        if (dhp && (!engine.equals("apriori") || !outputMode.equals("all") ||
+                    topK > 0)) {
+            throw new Exception("Error: --dhp only works with the apriori " +
+                                "engine, and cannot be used with --output " +
+                                "or --top-k");
+        }
+        // The baskets stay in the workers, which only count for apriori.
+        if (workers > 0 && (!engine.equals("apriori") || dhp ||
+                            !outputMode.equals("all") || topK > 0 ||
+                            sampleSize > 0 || snapshotFilename != null ||
+                            !incrementFilenames.isEmpty())) {
+            throw new Exception("Error: --workers only works with the " +
+                                "apriori engine, and cannot be used with " +
+                                "--dhp, --output, --top-k, --sample, " +
+                                "--snapshot or --increment");
+        }
+        // Constrained runs only count the itemsets of allowed rules, which
+        // the closed itemsets, top-k rules, snapshots and increments need
+        // all of.
+        if (constraints != null && (!outputMode.equals("all") || topK > 0 ||
+                                    sampleSize > 0 ||
+                                    snapshotFilename != null ||
+                                    !incrementFilenames.isEmpty())) {
+            throw new Exception("Error: item constraints cannot be used " +
+                                "with --output, --top-k, --sample, " +
+                                "--snapshot or --increment");
+        }
+        if (constraints != null) {
+            constraints.maxConsequentSize = maxConsequentSize;
+        }
+    }
+
+
+    private ItemConstraints getOrCreateConstraints() {
+        if (constraints == null) {
+            constraints = new ItemConstraints();
+        }
+        return constraints;
+    }
+
+
+    /*
+    * Parses the value of an item constraint option, a comma-separated list
+    * of items or item prefixes, where quoted items may hold commas.
+    */
+    private List<String> parseItemList(String name, String value)
+            throws Exception {
+        if (value == null || value.isEmpty()) {
+            throw new Exception("Error: " + name + " needs a comma-separated " +
+                                "list of items");
+        }
+        return ItemConstraints.parseList(value);
+    }
+
+
+    /*
+    * Parses the value of --sweep, a comma-separated list of
+    * <min_sup>:<min_conf> pairs.
+    */
+    private void parseSweep(String value) throws Exception {
+        if (value == null || value.isEmpty()) {
+            throw new Exception("Error: --sweep needs <min_sup>:<min_conf> " +
+                                "pairs");
+        }
+        for (String pair : value.split(",")) {
+            String[] thresholds = pair.split(":");
+            double[] setting = new double[2];
+            try {
+                if (thresholds.length != 2) {
+                    throw new NumberFormatException();
+                }
+                setting[0] = Double.parseDouble(thresholds[0]);
+                setting[1] = Double.parseDouble(thresholds[1]);
+            } catch (NumberFormatException e) {
+                throw new Exception("Error: --sweep needs " +
+                                    "<min_sup>:<min_conf> pairs, not " + pair);
+            }
+            if (setting[0] < 0 || setting[0] > 1 ||
+                setting[1] < 0 || setting[1] > 1) {
+                throw new Exception("Error: the thresholds of --sweep must " +
+                                    "be in the range [0, 1]");
+            }
+            sweepSettings.add(setting);
+        }
+    }
 }
\ No newline at end of file
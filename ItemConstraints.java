@@ -0,0 +1,262 @@
+import java.util.*;
+
+/**
+* Constraints on the items of the rules to mine: which items may be on the
+* left-hand side (LHS) and on the right-hand side (RHS) of a rule, given as
+* lists of prefixes that items must or must not start with, and items that
+* every rule must hold, on either side. Quotes in items and prefixes are
+* ignored, so "--rhs=Cause of Death:" matches "\"Cause of Death:ANEMIAS\""
+* too, and "--require='\"Cause of Death:ACCIDENTS, UNINTENTIONAL\"'" matches
+* the item Cause of Death:"ACCIDENTS, UNINTENTIONAL" of the file. Lists are
+* split on commas the way CsvBasketReader splits lines (see parseList), so
+* an item that holds a comma must be quoted, as in the CSV file.
+*
+* Items then fall into four classes: items that may only be on the LHS, items
+* that may only be on the RHS, items that may be on either side, and items
+* that may be on neither, which no rule can hold. Dataset.aprioriAlgorithm
+* pushes these classes into candidate generation, and RuleGenerator only
+* tries consequents of items that may be on the RHS.
+*
+* The constraints refer to item strings, and must be bound to the dictionary
+* of the dataset (see bind) before they are asked about item ids.
+*/
+public class ItemConstraints {
+    // Prefixes one of which an item must start with to be on each side, or
+    // null for any item.
+    public List<String> lhsPrefixes = null;
+    public List<String> rhsPrefixes = null;
+    // Prefixes no item on each side may start with.
+    public List<String> lhsExcludedPrefixes = new ArrayList<String>();
+    public List<String> rhsExcludedPrefixes = new ArrayList<String>();
+    // Items every rule must hold, on either side.
+    public List<String> requiredItems = new ArrayList<String>();
+    // Largest number of items on the RHS of a rule.
+    public int maxConsequentSize = 1;
+
+    // Whether every item id of the bound dictionary may be on each side.
+    private boolean[] lhsItems = new boolean[0];
+    private boolean[] rhsItems = new boolean[0];
+    private boolean[] required = new boolean[0];
+    // Sorted ids of the required items.
+    private int[] requiredIds = new int[0];
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Splits the value of a list option on the commas that are followed by
+    * an even number of quotes up to its end, like the fields of a CSV line,
+    * so that a quoted item may hold commas. Quotes are kept.
+    */
+    public static List<String> parseList(String value) {
+        return Arrays.asList(value.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)"));
+    }
+
+
+    /**
+    * Works out the class of every item of dictionary. Must be called again
+    * if items are added to it. Throws an exception that names the first
+    * required item that is not in the dictionary, if any.
+    */
+    public void bind(ItemDictionary dictionary) throws Exception {
+        int numItems = dictionary.size();
+        lhsItems = new boolean[numItems];
+        rhsItems = new boolean[numItems];
+        required = new boolean[numItems];
+        List<String> lhs = withoutQuotes(lhsPrefixes);
+        List<String> rhs = withoutQuotes(rhsPrefixes);
+        List<String> lhsExcluded = withoutQuotes(lhsExcludedPrefixes);
+        List<String> rhsExcluded = withoutQuotes(rhsExcludedPrefixes);
+        // The required items with their quotes removed, to look them up.
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < requiredItems.size(); i++) {
+            indexes.put(withoutQuotes(requiredItems.get(i)), i);
+        }
+        requiredIds = new int[requiredItems.size()];
+        Arrays.fill(requiredIds, -1);
+        for (int item = 0; item < numItems; item++) {
+            String value = withoutQuotes(dictionary.decode(item));
+            lhsItems[item] = matches(value, lhs, lhsExcluded);
+            rhsItems[item] = matches(value, rhs, rhsExcluded);
+            Integer index = indexes.get(value);
+            if (index != null && requiredIds[index] < 0) {
+                requiredIds[index] = item;
+            }
+        }
+        for (int i = 0; i < requiredIds.length; i++) {
+            if (requiredIds[i] < 0) {
+                throw new Exception(
+                    "Error: --require item " + requiredItems.get(i) +
+                    " is not in the dataset (quote an item that holds a " +
+                    "comma, as in the CSV file).");
+            }
+            required[requiredIds[i]] = true;
+        }
+        Arrays.sort(requiredIds);
+    }
+
+
+    public boolean canBeLhs(int item) {
+        return lhsItems[item];
+    }
+
+
+    public boolean canBeRhs(int item) {
+        return rhsItems[item];
+    }
+
+
+    /**
+    * Returns whether some rule may hold item, on either side.
+    */
+    public boolean allowsItem(int item) {
+        return lhsItems[item] || rhsItems[item];
+    }
+
+
+    public boolean isRequired(int item) {
+        return required[item];
+    }
+
+
+    /**
+    * Returns the sorted ids of the required items.
+    */
+    public int[] getRequiredItems() {
+        return requiredIds;
+    }
+
+
+    /**
+    * Returns whether an allowed rule can be made of exactly the items of
+    * itemset: it holds the required items, and can be split into a non-empty
+    * LHS of items that may be on the LHS and a RHS of at most
+    * maxConsequentSize items that may be on the RHS.
+    */
+    public boolean allowsItemset(Itemset itemset) {
+        for (int item : requiredIds) {
+            if (!itemset.contains(item)) {
+                return false;
+            }
+        }
+        int lhsOnly = 0;
+        int rhsOnly = 0;
+        int eitherSide = 0;
+        for (int i = 0; i < itemset.size(); i++) {
+            int item = itemset.get(i);
+            if (!allowsItem(item)) {
+                return false;
+            } else if (!rhsItems[item]) {
+                lhsOnly++;
+            } else if (!lhsItems[item]) {
+                rhsOnly++;
+            } else {
+                eitherSide++;
+            }
+        }
+        // The RHS-only items all go to the RHS, along with one item of
+        // either side if there are none.
+        int minConsequent = Math.max(rhsOnly, Math.min(1, eitherSide));
+        return minConsequent >= 1 && rhsOnly <= maxConsequentSize &&
+               lhsOnly + rhsOnly + eitherSide > minConsequent;
+    }
+
+
+    /**
+    * Returns whether every item of left may be on the LHS and every item of
+    * right on the RHS. The required items are those of allowsItemset, whose
+    * itemsets the rules are made of.
+    */
+    public boolean allowsRule(Itemset left, Itemset right) {
+        for (int i = 0; i < left.size(); i++) {
+            if (!lhsItems[left.get(i)]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < right.size(); i++) {
+            if (!rhsItems[right.get(i)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+    * Returns the itemsets of itemsets that allowed rules can be made of (see
+    * allowsItemset), in the same order.
+    */
+    public Set<Itemset> filter(Set<Itemset> itemsets) {
+        Set<Itemset> allowed = new LinkedHashSet<Itemset>();
+        for (Itemset itemset : itemsets) {
+            if (allowsItemset(itemset)) {
+                allowed.add(itemset);
+            }
+        }
+        return allowed;
+    }
+
+
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        describe(description, "LHS items starting with ", lhsPrefixes);
+        describe(description, "LHS items not starting with ",
+                 lhsExcludedPrefixes);
+        describe(description, "RHS items starting with ", rhsPrefixes);
+        describe(description, "RHS items not starting with ",
+                 rhsExcludedPrefixes);
+        describe(description, "rules holding ", requiredItems);
+        return description.toString();
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private static String withoutQuotes(String value) {
+        return value.replace("\"", "");
+    }
+
+
+    private static List<String> withoutQuotes(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        for (String value : values) {
+            result.add(withoutQuotes(value));
+        }
+        return result;
+    }
+
+
+    private static boolean matches(String value, List<String> prefixes,
+                                   List<String> excludedPrefixes) {
+        return (prefixes == null || startsWithAny(value, prefixes)) &&
+               !startsWithAny(value, excludedPrefixes);
+    }
+
+
+    private static boolean startsWithAny(String value,
+                                         List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (value.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static void describe(StringBuilder description, String label,
+                                 List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        if (description.length() > 0) {
+            description.append("; ");
+        }
+        description.append(label).append(values);
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+* Maps every distinct item string of a dataset to a dense integer id and back.
+* Ids are handed out in the order in which items are first seen, so the same
+* file always gets the same encoding.
+*
+* Items are indexed by their UTF-8 bytes in an open-addressing hash table, so
+* that CsvBasketReader can intern fields straight from its read buffer. A
+* String is only created the first time an item is seen.
+*/
+public class ItemDictionary {
+    private ArrayList<String> items = new ArrayList<String>();
+    private ArrayList<byte[]> itemBytes = new ArrayList<byte[]>();
+    // Item ids by hash of their bytes, -1 for free slots. Never more than
+    // half full.
+    private int[] table = newTable(64);
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the id of item, assigning it the next free id if it has not been
+    * seen before.
+    */
+    public int encode(String item) {
+        byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        return encode(bytes, 0, bytes.length);
+    }
+
+
+    /**
+    * Returns the id of the item whose UTF-8 bytes are
+    * buffer[start..start + length), assigning it the next free id if it has
+    * not been seen before.
+    */
+    public int encode(byte[] buffer, int start, int length) {
+        int slot = find(buffer, start, length);
+        if (table[slot] >= 0) {
+            return table[slot];
+        }
+        int id = items.size();
+        byte[] bytes = Arrays.copyOfRange(buffer, start, start + length);
+        itemBytes.add(bytes);
+        items.add(new String(bytes, StandardCharsets.UTF_8));
+        table[slot] = id;
+        if (2 * items.size() > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+
+    /**
+    * Returns the id of item, or -1 if the item is not in the dictionary.
+    */
+    public int lookup(String item) {
+        byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        return table[find(bytes, 0, bytes.length)];
+    }
+
+
+    /**
+    * Encodes a set of item strings into an itemset, or returns null if any of
+    * the items is not in the dictionary.
+    */
+    public Itemset encode(Set<String> itemStrings) {
+        int[] itemIds = new int[itemStrings.size()];
+        int i = 0;
+        for (String item : itemStrings) {
+            itemIds[i] = lookup(item);
+            if (itemIds[i] < 0) {
+                return null;
+            }
+            i++;
+        }
+        return Itemset.of(itemIds);
+    }
+
+
+    public String decode(int id) {
+        return items.get(id);
+    }
+
+
+    /**
+    * Returns the UTF-8 bytes of the item with the given id. The array must not
+    * be modified.
+    */
+    public byte[] decodeBytes(int id) {
+        return itemBytes.get(id);
+    }
+
+
+    /**
+    * Decodes an itemset back into its item strings, in alphabetical order.
+    */
+    public Set<String> decode(Itemset itemset) {
+        Set<String> itemStrings = new TreeSet<String>();
+        for (int i = 0; i < itemset.size(); i++) {
+            itemStrings.add(items.get(itemset.get(i)));
+        }
+        return itemStrings;
+    }
+
+
+    public int size() {
+        return items.size();
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private static int[] newTable(int capacity) {
+        int[] newTable = new int[capacity];
+        Arrays.fill(newTable, -1);
+        return newTable;
+    }
+
+
+    private static int hash(byte[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+
+    /*
+    * Returns the slot of the table that holds the given bytes, or the free
+    * slot where they would go.
+    */
+    private int find(byte[] buffer, int start, int length) {
+        int mask = table.length - 1;
+        int slot = hash(buffer, start, length) & mask;
+        while (table[slot] >= 0) {
+            byte[] bytes = itemBytes.get(table[slot]);
+            if (Arrays.equals(bytes, 0, bytes.length,
+                              buffer, start, start + length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    private void rehash() {
+        table = newTable(2 * table.length);
+        int mask = table.length - 1;
+        for (int id = 0; id < itemBytes.size(); id++) {
+            byte[] bytes = itemBytes.get(id);
+            int slot = hash(bytes, 0, bytes.length) & mask;
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+* An immutable itemset stored as a sorted array of item ids (see
+* ItemDictionary). Itemsets are compared by length first and then
+* lexicographically by id, which is the order in which apriori generates them.
+*/
+public final class Itemset implements Comparable<Itemset> {
+    private final int[] items;
+    private final int hash;
+
+
+    /**
+    * Wraps items, which must already be sorted in increasing order and
+    * duplicate-free. The array is not copied.
+    */
+    public Itemset(int[] items) {
+        this.items = items;
+        this.hash = Arrays.hashCode(items);
+    }
+
+
+    /**
+    * Builds an itemset from item ids in any order.
+    */
+    public static Itemset of(int... items) {
+        int[] sorted = items.clone();
+        Arrays.sort(sorted);
+        return new Itemset(sorted);
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    public int size() {
+        return items.length;
+    }
+
+
+    public int get(int index) {
+        return items[index];
+    }
+
+
+    public int[] toArray() {
+        return items.clone();
+    }
+
+
+    public boolean contains(int item) {
+        return Arrays.binarySearch(items, item) >= 0;
+    }
+
+
+    /**
+    * Returns a copy of this itemset with the item at position index removed.
+    */
+    public Itemset without(int index) {
+        int[] result = new int[items.length - 1];
+        System.arraycopy(items, 0, result, 0, index);
+        System.arraycopy(items, index + 1, result, index,
+                         items.length - index - 1);
+        return new Itemset(result);
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Itemset)) {
+            return false;
+        }
+        Itemset otherItemset = (Itemset)other;
+        return hash == otherItemset.hash &&
+               Arrays.equals(items, otherItemset.items);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    @Override
+    public int compareTo(Itemset other) {
+        if (items.length != other.items.length) {
+            return items.length - other.items.length;
+        }
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != other.items[i]) {
+                return items[i] < other.items[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+
+    public String toString() {
+        return Arrays.toString(items);
+    }
+}
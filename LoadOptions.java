@@ -0,0 +1,56 @@
+import java.io.*;
+import java.util.*;
+
+/**
+* Options that control how a Dataset is read from its CSV file.
+*/
+public class LoadOptions {
+    // Whether lines without items are kept as empty baskets.
+    public boolean includeEmptyBaskets;
+    // Threads that parse the file and count supports.
+    public int threads = 1;
+    // Index (from 0) of the field that holds the weight of each line, or -1
+    // if lines are not weighted.
+    public int weightColumn = -1;
+    // Whether identical baskets are collapsed into one weighted basket.
+    public boolean collapseDuplicates = false;
+    // Whether baskets are spilled to disk and read back on every pass
+    // instead of being kept in memory.
+    public boolean streaming = false;
+    // Directory of the spill file, or null for the default temporary
+    // directory.
+    public File spillDirectory = null;
+    // Whether every item is a "Column:value" pair and a basket holds at most
+    // one value of each column, so itemsets never hold two items of the same
+    // column.
+    public boolean categorical = false;
+    // Column names of a categorical dataset, or null to take the text before
+    // the first ':' of every item.
+    public List<String> columns = null;
+    // Number of rows kept in a uniform random sample of the file, or 0 to
+    // keep every row.
+    public int sampleSize = 0;
+    // Seed of the sample, so that runs can be repeated.
+    public long sampleSeed = 1;
+    // Whether apriori prunes candidate pairs with hash buckets and trims the
+    // baskets between passes, as in DHP (see Dataset.aprioriAlgorithm).
+    public boolean dhp = false;
+    // Whether the vertical engines count bitsets with the Vector API kernel
+    // (see BitsetCounter) instead of the scalar one.
+    public boolean simd = false;
+    // Largest number of bytes the itemset counts of a run may take (see
+    // SupportCountTable), or 0 for no limit.
+    public long maxCountBytes = 0;
+    // Number of worker processes that each load one shard of the file and
+    // count candidates in it (see CountDistribution), or 0 to load the
+    // file in this process.
+    public int workers = 0;
+    // Constraints on the items of the rules, pushed into candidate generation
+    // by Dataset.aprioriAlgorithm, or null to mine every itemset.
+    public ItemConstraints constraints = null;
+
+
+    public LoadOptions(boolean includeEmptyBaskets) {
+        this.includeEmptyBaskets = includeEmptyBaskets;
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.*;
+
+/**
+* Records what each step of a run costs: loading, every pass of apriori (or
+* the whole run of another engine) and rule generation. A step records the
+* candidates it generated, pruned without counting and found frequent, the
+* baskets it scanned, its wall time, the bytes allocated by the thread that
+* ran it (not by counting threads, see --threads) and the largest size
+* Dataset.itemsetCounts has reached so far.
+*
+* Each step is also committed as a JFR event (MiningStepEvent), so running
+* with -XX:StartFlightRecording puts the steps on the same timeline as GC
+* and allocation profiling. When no recording is on, the events cost next to
+* nothing. The steps of a whole run can be written as a JSON summary with
+* writeJson.
+*/
+public class MiningMetrics {
+    private List<MiningStep> steps = new ArrayList<MiningStep>();
+    // Baskets visited by all scans of the dataset so far, from any thread.
+    private AtomicLong transactionsScanned = new AtomicLong();
+    private int peakItemsetCounts = 0;
+    private com.sun.management.ThreadMXBean threadBean = null;
+
+
+    public MiningMetrics() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean &&
+            ((com.sun.management.ThreadMXBean)bean)
+                .isThreadAllocatedMemorySupported()) {
+            threadBean = (com.sun.management.ThreadMXBean)bean;
+        }
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Starts a step of the given phase (e.g. "apriori"). pass is the itemset
+    * length of an apriori pass, and 0 for a step that is a whole phase.
+    */
+    public MiningStep start(String phase, int pass) {
+        MiningStep step = new MiningStep(phase, pass);
+        step.event.begin();
+        step.startNanos = System.nanoTime();
+        step.startAllocatedBytes = allocatedBytes();
+        step.startTransactionsScanned = transactionsScanned.get();
+        return step;
+    }
+
+
+    /**
+    * Ends step, given the current size of the itemset counts, and records
+    * it.
+    */
+    public void finish(MiningStep step, int itemsetCountsSize) {
+        step.wallNanos = System.nanoTime() - step.startNanos;
+        step.allocatedBytes = threadBean == null
+            ? -1 : allocatedBytes() - step.startAllocatedBytes;
+        step.transactionsScanned =
+            transactionsScanned.get() - step.startTransactionsScanned;
+        peakItemsetCounts = Math.max(peakItemsetCounts, itemsetCountsSize);
+        step.peakItemsetCounts = peakItemsetCounts;
+        steps.add(step);
+
+        MiningStepEvent event = step.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = step.phase;
+            event.pass = step.pass;
+            event.candidatesGenerated = step.candidatesGenerated;
+            event.candidatesPruned = step.candidatesPruned;
+            event.candidatesSurviving = step.candidatesSurviving;
+            event.transactionsScanned = step.transactionsScanned;
+            event.allocatedBytes = step.allocatedBytes;
+            event.peakItemsetCounts = step.peakItemsetCounts;
+            event.commit();
+        }
+    }
+
+
+    /**
+    * Adds count to the number of baskets scanned. Safe to call from several
+    * threads.
+    */
+    public void addTransactionsScanned(long count) {
+        transactionsScanned.addAndGet(count);
+    }
+
+
+    public List<MiningStep> getSteps() {
+        return steps;
+    }
+
+
+    /**
+    * Writes the steps recorded so far to file as a JSON object, after the
+    * entries of run (String or Number values) that describe the run.
+    */
+    public void writeJson(File file, Map<String, Object> run)
+            throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, Object> entry : run.entrySet()) {
+            json.append("  ").append(quote(entry.getKey())).append(": ")
+                .append(value(entry.getValue())).append(",\n");
+        }
+        long totalNanos = 0;
+        for (MiningStep step : steps) {
+            totalNanos += step.wallNanos;
+        }
+        json.append("  \"totalWallNanos\": ").append(totalNanos)
+            .append(",\n  \"steps\": [");
+        for (int s = 0; s < steps.size(); s++) {
+            MiningStep step = steps.get(s);
+            json.append(s == 0 ? "\n" : ",\n")
+                .append("    {\"phase\": ").append(quote(step.phase))
+                .append(", \"pass\": ").append(step.pass)
+                .append(", \"candidatesGenerated\": ")
+                .append(step.candidatesGenerated)
+                .append(", \"candidatesPruned\": ")
+                .append(step.candidatesPruned)
+                .append(", \"candidatesSurviving\": ")
+                .append(step.candidatesSurviving)
+                .append(", \"transactionsScanned\": ")
+                .append(step.transactionsScanned)
+                .append(", \"wallNanos\": ").append(step.wallNanos)
+                .append(", \"allocatedBytes\": ").append(step.allocatedBytes)
+                .append(", \"peakItemsetCounts\": ")
+                .append(step.peakItemsetCounts).append("}");
+        }
+        json.append(steps.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                                               StandardCharsets.UTF_8);
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private long allocatedBytes() {
+        return threadBean == null
+               ? 0 : threadBean.getThreadAllocatedBytes(
+                         Thread.currentThread().getId());
+    }
+
+
+    private static String value(Object value) {
+        if (value instanceof Number) {
+            double number = ((Number)value).doubleValue();
+            // JSON has no NaN or infinity.
+            return Double.isNaN(number) || Double.isInfinite(number)
+                   ? "null" : value.toString();
+        }
+        return value == null ? "null" : quote(value.toString());
+    }
+
+
+    private static String quote(String string) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int)c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+
+    /**
+    * The JFR event of a MiningStep.
+    */
+    @Name("armining.MiningStep")
+    @Label("Mining Step")
+    @Category("Association Rule Mining")
+    @Description("One step of a run: loading, a pass of apriori, a whole " +
+                 "engine run or rule generation")
+    static class MiningStepEvent extends jdk.jfr.Event {
+        @Label("Phase")
+        String phase;
+        @Label("Pass")
+        int pass;
+        @Label("Candidates Generated")
+        long candidatesGenerated;
+        @Label("Candidates Pruned")
+        long candidatesPruned;
+        @Label("Candidates Surviving")
+        long candidatesSurviving;
+        @Label("Transactions Scanned")
+        long transactionsScanned;
+        @Label("Allocated Bytes")
+        @DataAmount
+        long allocatedBytes;
+        @Label("Peak Itemset Counts")
+        int peakItemsetCounts;
+    }
+}
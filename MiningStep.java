@@ -0,0 +1,31 @@
+/**
+* The measurements of one step of a run. The candidate counts are filled in
+* by the code that runs the step, and are 0 where they do not apply.
+*/
+public class MiningStep {
+    public String phase;
+    public int pass;
+    // Candidates formed, before the prune step.
+    public long candidatesGenerated;
+    // Candidates dropped by the prune step, without being counted.
+    public long candidatesPruned;
+    // Candidates found frequent (or rules found confident).
+    public long candidatesSurviving;
+    public long transactionsScanned;
+    public long wallNanos;
+    // -1 if the JVM cannot measure it.
+    public long allocatedBytes;
+    public int peakItemsetCounts;
+
+    MiningMetrics.MiningStepEvent event =
+        new MiningMetrics.MiningStepEvent();
+    long startNanos;
+    long startAllocatedBytes;
+    long startTransactionsScanned;
+
+
+    public MiningStep(String phase, int pass) {
+        this.phase = phase;
+        this.pass = pass;
+    }
+}
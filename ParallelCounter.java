@@ -0,0 +1,163 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Counts supports on several cores. The baskets of a dataset are split into
+* chunks on a fork-join pool, each chunk is counted into its own int array,
+* and the arrays are summed pairwise as the tasks join, so no counter is ever
+* shared between threads. The sums are exact, so the results are the same as
+* those of a sequential pass.
+*/
+public class ParallelCounter {
+    // Chunks smaller than this are not worth a task of their own.
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    private ForkJoinPool pool;
+    private int threads;
+
+
+    public ParallelCounter(int threads) {
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the number of baskets (the sum of their weights) of dataset that
+    * contain each candidate of candidateTrie.
+    */
+    public int[] countCandidates(Dataset dataset,
+                                 CandidateTrie candidateTrie) {
+        return countCandidates(dataset, candidateTrie, 0,
+                               dataset.storedSize());
+    }
+
+
+    /**
+    * Same as countCandidates(dataset, candidateTrie), but only counts the
+    * baskets from index from up to (but not including) index to.
+    */
+    public int[] countCandidates(Dataset dataset,
+                                 final CandidateTrie candidateTrie,
+                                 int from, int to) {
+        return pool.invoke(new CountingTask(
+            dataset, from, to, chunkSize(to - from),
+            candidateTrie.size(), new Kernel() {
+                public void count(int[] items, int start, int end, int weight,
+                                  int[] counts) {
+                    candidateTrie.count(items, start, end, weight, counts);
+                }
+            }));
+    }
+
+
+    /**
+    * Returns the number of baskets (the sum of their weights) of dataset that
+    * contain each item id.
+    */
+    public int[] countItems(Dataset dataset) {
+        return pool.invoke(new CountingTask(
+            dataset, 0, dataset.storedSize(), chunkSize(dataset.storedSize()),
+            dataset.getDictionary().size(), new Kernel() {
+                public void count(int[] items, int start, int end, int weight,
+                                  int[] counts) {
+                    for (int i = start; i < end; i++) {
+                        counts[items[i]] += weight;
+                    }
+                }
+            }));
+    }
+
+
+    /**
+    * Returns numCounts counters filled in by kernel from every basket of
+    * dataset.
+    */
+    public int[] count(Dataset dataset, int numCounts, Kernel kernel) {
+        return pool.invoke(new CountingTask(
+            dataset, 0, dataset.storedSize(), chunkSize(dataset.storedSize()),
+            numCounts, kernel));
+    }
+
+
+    public int getThreads() {
+        return threads;
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Aims for a few chunks per thread so that uneven chunks even out.
+    */
+    private int chunkSize(int numBaskets) {
+        return Math.max(MIN_CHUNK_SIZE, numBaskets / (4 * threads) + 1);
+    }
+
+
+    /**
+    * Adds one basket, items[start..end) with the given weight, to counts.
+    */
+    interface Kernel {
+        void count(int[] items, int start, int end, int weight, int[] counts);
+    }
+}
+
+
+/**
+* Counts the baskets from..to - 1 of a dataset with kernel into a fresh array
+* of numCounters counters, splitting the range in two until it is at most
+* chunkSize baskets long.
+*/
+class CountingTask extends RecursiveTask<int[]> {
+    private static final long serialVersionUID = 1L;
+
+    private Dataset dataset;
+    private int from;
+    private int to;
+    private int chunkSize;
+    private int numCounters;
+    private ParallelCounter.Kernel kernel;
+
+
+    public CountingTask(Dataset dataset, int from, int to, int chunkSize,
+                        int numCounters, ParallelCounter.Kernel kernel) {
+        this.dataset = dataset;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+        this.numCounters = numCounters;
+        this.kernel = kernel;
+    }
+
+
+    @Override
+    protected int[] compute() {
+        if (to - from <= chunkSize) {
+            final int[] counts = new int[numCounters];
+            dataset.scan(from, to, new TransactionVisitor() {
+                public void visit(int[] items, int start, int end,
+                                  int weight) {
+                    kernel.count(items, start, end, weight, counts);
+                }
+            });
+            return counts;
+        }
+        int middle = (from + to) >>> 1;
+        CountingTask left = new CountingTask(dataset, from, middle, chunkSize,
+                                             numCounters, kernel);
+        CountingTask right = new CountingTask(dataset, middle, to, chunkSize,
+                                              numCounters, kernel);
+        left.fork();
+        int[] counts = right.compute();
+        int[] leftCounts = left.join();
+        for (int i = 0; i < numCounters; i++) {
+            counts[i] += leftCounts[i];
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Generates the high-confidence association rules of a set of frequent
+* itemsets, with consequents of up to a given number of items, following
+* ap-genrules in Section 3 of Agrawal and Srikant's paper.
+*
+* For a frequent itemset l, moving items from the antecedent to the
+* consequent can only lower the confidence of the rule, so consequents are
+* grown level-wise like apriori candidates: a consequent of m + 1 items is
+* only tried if all of its subsets of m items gave rules. Confidences come
+* straight from the supports in Dataset.itemsetCounts, and the rules are kept
+* as itemsets until they are printed.
+*
+* Itemsets are independent of each other, so with several threads they are
+* split into chunks on a fork-join pool. The chunks are joined back in order,
+* so the rules are the same as those of a sequential run.
+*
+* With ItemConstraints, consequents are only made of items that may be on
+* the RHS, and a rule is only kept if its antecedent may be on the LHS. A
+* rule that is confident enough but not allowed still lets its consequent
+* grow, since a larger consequent moves items off the LHS.
+*/
+public class RuleGenerator {
+    // Fewer itemsets than this are not worth a task of their own.
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    private Dataset dataset;
+    private double minConfidence;
+    private int maxConsequentSize;
+    private int threads;
+    // Constraints on the items of the rules, or null.
+    private ItemConstraints constraints;
+    // Rules whose confidence was computed, from all threads.
+    private LongAdder rulesTried = new LongAdder();
+
+
+    /**
+    * Rules must have a confidence above minConfidence and at most
+    * maxConsequentSize items on their right-hand side.
+    */
+    public RuleGenerator(Dataset dataset, double minConfidence,
+                         int maxConsequentSize, int threads) {
+        this(dataset, minConfidence, maxConsequentSize, threads, null);
+    }
+
+
+    /**
+    * Same as above, but rules must also satisfy constraints, which must be
+    * bound to the dictionary of dataset, unless it is null.
+    */
+    public RuleGenerator(Dataset dataset, double minConfidence,
+                         int maxConsequentSize, int threads,
+                         ItemConstraints constraints) {
+        this.dataset = dataset;
+        this.minConfidence = minConfidence;
+        this.maxConsequentSize = maxConsequentSize;
+        this.threads = threads;
+        this.constraints = constraints;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the rules of every itemset of frequentItemsets, in the order of
+    * the itemsets and, for each itemset, by consequent size and then by
+    * consequent.
+    */
+    public List<Rule_confidence> generate(Set<Itemset> frequentItemsets) {
+        Itemset[] itemsets =
+            frequentItemsets.toArray(new Itemset[frequentItemsets.size()]);
+        if (threads <= 1) {
+            return generate(itemsets, 0, itemsets.length);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                                     itemsets.length / (4 * threads) + 1);
+            return pool.invoke(
+                new RuleTask(this, itemsets, 0, itemsets.length, chunkSize));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+    * Returns the rules of itemsets[from..to).
+    */
+    public List<Rule_confidence> generate(Itemset[] itemsets, int from,
+                                          int to) {
+        List<Rule_confidence> rules = new ArrayList<Rule_confidence>();
+        for (int i = from; i < to; i++) {
+            generateRules(itemsets[i], rules);
+        }
+        return rules;
+    }
+
+
+    /**
+    * Returns the number of rules whose confidence was computed so far,
+    * including those that fell below min_conf.
+    */
+    public long getRulesTried() {
+        return rulesTried.sum();
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * "forall large k-itemsets l_k, k >= 2 do begin"
+    */
+    private void generateRules(Itemset itemset, List<Rule_confidence> rules) {
+        if (itemset.size() < 2) {
+            return;
+        }
+        // "H_1 = { consequents of rules derived from l_k with one item in
+        // the consequent };"
+        List<int[]> consequents = new ArrayList<int[]>();
+        for (int i = 0; i < itemset.size(); i++) {
+            if (constraints != null && !constraints.canBeRhs(itemset.get(i))) {
+                continue;
+            }
+            int[] consequent = {itemset.get(i)};
+            if (addRule(itemset, consequent, rules)) {
+                consequents.add(consequent);
+            }
+        }
+        // "call ap-genrules(l_k, H_1);"
+        for (int m = 1; m < maxConsequentSize && m + 1 < itemset.size() &&
+                        consequents.size() > m; m++) {
+            // "H_{m+1} = apriori-gen(H_m);"
+            List<int[]> nextConsequents = new ArrayList<int[]>();
+            for (int[] consequent : joinConsequents(consequents)) {
+                // "if (conf >= minconf) then output the rule ... else delete
+                // h_{m+1} from H_{m+1};"
+                if (addRule(itemset, consequent, rules)) {
+                    nextConsequents.add(consequent);
+                }
+            }
+            consequents = nextConsequents;
+        }
+    }
+
+
+    /*
+    * Adds the rule (itemset - consequent) => consequent to rules if its
+    * confidence is high enough, and returns whether it was. With
+    * constraints, a rule that is confident enough but whose antecedent may
+    * not be on the LHS is left out, but counts as added.
+    */
+    private boolean addRule(Itemset itemset, int[] consequent,
+                            List<Rule_confidence> rules) {
+        int[] antecedent = new int[itemset.size() - consequent.length];
+        int a = 0;
+        int c = 0;
+        for (int i = 0; i < itemset.size(); i++) {
+            if (c < consequent.length && itemset.get(i) == consequent[c]) {
+                c++;
+            } else {
+                antecedent[a++] = itemset.get(i);
+            }
+        }
+        Itemset left = new Itemset(antecedent);
+        rulesTried.increment();
+        double LHS = dataset.getItemsetSupport(left);
+        double LHSuniRHS = dataset.getItemsetSupport(itemset);
+        double conf = 100 * (LHSuniRHS / LHS);
+        if (!(conf > 100 * minConfidence)) {
+            return false;
+        }
+        Itemset right = new Itemset(consequent);
+        if (constraints != null && !constraints.allowsRule(left, right)) {
+            return true;
+        }
+        double RHS = dataset.getItemsetSupport(right);
+        double supp = 100 * LHSuniRHS;
+        double interestingness = 100 * LHSuniRHS / (LHS * RHS);
+        rules.add(new Rule_confidence(left, right, supp, conf,
+                                      interestingness));
+        return true;
+    }
+
+
+    /*
+    * Joins the sorted consequents of m items that share their first m - 1
+    * items, and keeps the joins whose subsets of m items are all consequents.
+    */
+    private static List<int[]> joinConsequents(List<int[]> consequents) {
+        Set<Itemset> consequentSet = new HashSet<Itemset>();
+        for (int[] consequent : consequents) {
+            consequentSet.add(new Itemset(consequent));
+        }
+        List<int[]> result = new ArrayList<int[]>();
+        int last = consequents.get(0).length - 1;
+        for (int i = 0; i < consequents.size(); i++) {
+            int[] consequent1 = consequents.get(i);
+            for (int j = i + 1; j < consequents.size(); j++) {
+                int[] consequent2 = consequents.get(j);
+                if (!Arrays.equals(consequent1, 0, last,
+                                   consequent2, 0, last)) {
+                    // Sorted, so no later consequent shares the prefix.
+                    break;
+                }
+                int[] joined = Arrays.copyOf(consequent1, last + 2);
+                joined[last + 1] = consequent2[last];
+                Itemset joinedItemset = new Itemset(joined);
+                boolean allSubsets = true;
+                for (int skip = 0; skip < last && allSubsets; skip++) {
+                    allSubsets =
+                        consequentSet.contains(joinedItemset.without(skip));
+                }
+                if (allSubsets) {
+                    result.add(joined);
+                }
+            }
+        }
+        return result;
+    }
+}
+
+
+/**
+* Generates the rules of itemsets[from..to), splitting the range in two until
+* it is at most chunkSize itemsets long.
+*/
+class RuleTask extends RecursiveTask<List<Rule_confidence>> {
+    private static final long serialVersionUID = 1L;
+
+    private RuleGenerator generator;
+    private Itemset[] itemsets;
+    private int from;
+    private int to;
+    private int chunkSize;
+
+
+    public RuleTask(RuleGenerator generator, Itemset[] itemsets, int from,
+                    int to, int chunkSize) {
+        this.generator = generator;
+        this.itemsets = itemsets;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+
+    @Override
+    protected List<Rule_confidence> compute() {
+        if (to - from <= chunkSize) {
+            return generator.generate(itemsets, from, to);
+        }
+        int middle = (from + to) >>> 1;
+        RuleTask left =
+            new RuleTask(generator, itemsets, from, middle, chunkSize);
+        RuleTask right =
+            new RuleTask(generator, itemsets, middle, to, chunkSize);
+        left.fork();
+        List<Rule_confidence> rightRules = right.compute();
+        List<Rule_confidence> rules = left.join();
+        rules.addAll(rightRules);
+        return rules;
+    }
+}
@@ -38,15 +38,156 @@ public class RuleMiningMain {
             System.exit(1);
         }
 
-        // Run the apriori algorithm to efficiently find the frequent itemsets.
+        if (inputParser.getTopK() > 0) {
+            outputTopKRules(dataset, inputParser.getTopK(), minSupport,
+                            minConfidence, outputWriter);
+            outputWriter.close();
+            writeMetrics(dataset);
+            return;
+        }
+
+        // Run the apriori algorithm (or the engine picked with --engine) to
+        // efficiently find the frequent itemsets.
         System.out.println("Getting frequent itemsets...");
-        Set<Set<String>> frequentItemsets =
-            inputParser.getDataset().aprioriAlgorithm(
-                inputParser.getMinSupport(),
-                inputParser.getMinConfidence());
-        printFrequentItemsets(dataset, minSupport, frequentItemsets, outputWriter);
+        Set<Itemset> frequentItemsets;
+        // The closed or maximal itemsets, with --output=closed|maximal.
+        Set<Itemset> condensedItemsets = null;
+        String outputMode = inputParser.getOutputMode();
+        // Mine once at the lowest min_sup of the command line and --sweep;
+        // the higher ones are answered from the same counts.
+        double lowestMinSupport = inputParser.getLowestMinSupport();
+        // A sample to verify is mined at a lower support, so that itemsets
+        // frequent in the whole file are unlikely to be missed.
+        double miningSupport = inputParser.getVerifySample()
+            ? SampleBounds.loweredMinSupport(minSupport, dataset.size())
+            : lowestMinSupport;
+        try {
+            if (inputParser.snapshotCoversMinSupport()) {
+                // Already mined at this support or a lower one.
+                frequentItemsets =
+                    dataset.frequentItemsetsAt(lowestMinSupport);
+            } else {
+                if (!outputMode.equals("all")) {
+                    // Mine only the closed itemsets, which give the supports of
+                    // all the others.
+                    condensedItemsets = dataset.closedItemsets(
+                        miningSupport, outputMode.equals("maximal"));
+                    frequentItemsets =
+                        dataset.frequentItemsetsAt(miningSupport);
+                } else if (inputParser.getEngine().equals("eclat")) {
+                    frequentItemsets = dataset.eclatAlgorithm(miningSupport);
+                } else if (inputParser.getEngine().equals("fpgrowth")) {
+                    frequentItemsets = dataset.fpGrowthAlgorithm(miningSupport);
+                } else if (inputParser.getEngine().equals("partition")) {
+                    frequentItemsets = dataset.partitionedAlgorithm(
+                        miningSupport, inputParser.getPartitions());
+                } else {
+                    frequentItemsets =
+                        dataset.aprioriAlgorithm(miningSupport, minConfidence);
+                }
+                if (inputParser.getSnapshotFilename() != null) {
+                    saveSnapshot(dataset, lowestMinSupport);
+                }
+            }
+        } catch (IllegalStateException e) {
+            // The itemset counts outgrew --count-memory, or a count worker
+            // was lost.
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // Count what was found on the sample in the whole file, which makes
+        // the result exact.
+        if (inputParser.getVerifySample()) {
+            System.out.println("Verifying sample...");
+            try {
+                frequentItemsets = dataset.verifySample(
+                    inputParser.getDatasetFilename(), minSupport,
+                    frequentItemsets);
+                condensedItemsets = null;
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+        // Add the new baskets, if any, and update the frequent itemsets
+        // incrementally instead of mining everything again.
+        for (String incrementFilename : inputParser.getIncrementFilenames()) {
+            System.out.println("Adding increment " + incrementFilename + "...");
+            try {
+                frequentItemsets = dataset.addIncrement(
+                    incrementFilename, lowestMinSupport, frequentItemsets);
+                condensedItemsets = null;
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
         System.out.println("Getting frequent itemsets...Done.");
 
+        if (minSupport == lowestMinSupport) {
+            writeResults(dataset, minSupport, minConfidence, frequentItemsets,
+                         condensedItemsets, outputWriter);
+        } else {
+            writeResults(dataset, minSupport, minConfidence,
+                         dataset.frequentItemsetsAt(minSupport), null,
+                         outputWriter);
+        }
+        outputWriter.close();
+
+        // Answer every --sweep setting from the same counts, without mining
+        // again.
+        for (double[] setting : inputParser.getSweepSettings()) {
+            String sweepOutputFilename =
+                InputParser.sweepOutputFilename(setting);
+            System.out.println("Writing " + sweepOutputFilename + "...");
+            PrintWriter sweepWriter = null;
+            try {
+                sweepWriter = new PrintWriter(sweepOutputFilename, "UTF-8");
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            if (setting[0] == lowestMinSupport) {
+                writeResults(dataset, setting[0], setting[1],
+                             frequentItemsets, condensedItemsets, sweepWriter);
+            } else {
+                writeResults(dataset, setting[0], setting[1],
+                             dataset.frequentItemsetsAt(setting[0]), null,
+                             sweepWriter);
+            }
+            sweepWriter.close();
+        }
+        writeMetrics(dataset);
+    }
+
+
+    /*
+    * Writes the frequent itemsets at minSupport (or their closed or maximal
+    * ones, which are derived from them when condensedItemsets is null) and
+    * the rules at minConfidence to outputWriter.
+    */
+    private static void writeResults(Dataset dataset, double minSupport,
+                                     double minConfidence,
+                                     Set<Itemset> frequentItemsets,
+                                     Set<Itemset> condensedItemsets,
+                                     PrintWriter outputWriter) {
+        String outputMode = inputParser.getOutputMode();
+        // Only the itemsets allowed rules can be made of, whichever engine
+        // mined them.
+        ItemConstraints constraints = inputParser.getConstraints();
+        if (constraints != null) {
+            frequentItemsets = constraints.filter(frequentItemsets);
+        }
+        if (!outputMode.equals("all") && condensedItemsets == null) {
+            condensedItemsets = dataset.condense(
+                frequentItemsets, outputMode.equals("maximal"));
+        }
+        printFrequentItemsets(dataset, minSupport,
+                              condensedItemsets != null ? condensedItemsets
+                                                        : frequentItemsets,
+                              outputWriter);
+
         if (PRINT_RULES_TO_COMMANDLINE) {
             System.out.println();
         }
@@ -56,6 +197,7 @@ public class RuleMiningMain {
 
         // Find high confidence rules.
         System.out.println("Getting high-confidence rules...");
+        rules_list.clear();
         outputRules(dataset, frequentItemsets, minConfidence, outputWriter);
         System.out.println("Getting high-confidence rules...Done.");
 
@@ -63,7 +205,63 @@ public class RuleMiningMain {
         if (PRINT_RULES_TO_OUTPUT_FILE) {
             System.out.println("Writing frequent items to Output file.");
         }
-        outputWriter.close();
+    }
+
+
+    /*
+    * Finds and prints the k rules with the highest support whose confidence
+    * is above min_conf (see TopKRuleMiner). min_sup is only a floor for the
+    * support threshold, which rises on its own as good rules are found.
+    */
+    private static void outputTopKRules(Dataset dataset, int k,
+                                        double minSupport, double min_conf,
+                                        PrintWriter outputWriter) {
+        System.out.println("Getting top-" + k + " rules...");
+        MiningStep step = dataset.getMetrics().start("top-k rules", 0);
+        TopKRuleMiner topKRuleMiner = new TopKRuleMiner(
+            k, min_conf, dataset.size(), dataset.minimumCount(minSupport));
+        rules_list.addAll(topKRuleMiner.mine(
+            dataset.verticalLayout(topKRuleMiner.getMinCount())));
+        Collections.sort(rules_list);
+        step.candidatesSurviving = rules_list.size();
+        dataset.getMetrics().finish(step, 0);
+        System.out.println("Getting top-" + k + " rules...Done.");
+
+        String header = "==Top-" + k + " association rules by support " +
+            "(min_conf=" + min_conf * 100 + "%, reached min_sup=" +
+            (100.0 * topKRuleMiner.getMinCount() / dataset.size()) + "%)";
+        if (PRINT_RULES_TO_COMMANDLINE) {
+            System.out.println(header);
+        }
+        if (PRINT_RULES_TO_OUTPUT_FILE) {
+            outputWriter.println(header);
+        }
+        ItemDictionary dictionary = dataset.getDictionary();
+        for (Rule_confidence rules : rules_list) {
+            if (PRINT_RULES_TO_COMMANDLINE) {
+                System.out.println(rules.format(dictionary));
+            }
+            if (PRINT_RULES_TO_OUTPUT_FILE) {
+                outputWriter.println(rules.format(dictionary));
+            }
+        }
+    }
+
+
+    /*
+    * Saves the dataset and the counts just mined to the --snapshot file.
+    */
+    private static void saveSnapshot(Dataset dataset, double minSupport) {
+        System.out.println("Writing snapshot...");
+        try {
+            dataset.toSnapshot(new File(inputParser.getDatasetFilename()),
+                               minSupport)
+                   .write(new File(inputParser.getSnapshotFilename()));
+        } catch (IOException e) {
+            System.err.println("Error: could not write snapshot: " +
+                               e.getMessage());
+            System.exit(1);
+        }
     }
 
 
@@ -75,23 +273,40 @@ public class RuleMiningMain {
 
 
     public static void printFrequentItemsets(Dataset dataset, double minSupport,
-            Set<Set<String>> frequentItemsets, PrintWriter outputWriter) {
+            Set<Itemset> frequentItemsets, PrintWriter outputWriter) {
+        String title = "Frequent itemsets";
+        if (inputParser.getOutputMode().equals("closed")) {
+            title = "Closed frequent itemsets";
+        } else if (inputParser.getOutputMode().equals("maximal")) {
+            title = "Maximal frequent itemsets";
+        }
+        String header = "==" + title + " (min_sup=" + (minSupport * 100) + "%";
+        if (dataset.isSampled()) {
+            header += ", estimated from a sample of " + dataset.size() +
+                " of " + dataset.getFileWeight() + " rows";
+        }
+        header += ")";
         if (PRINT_RULES_TO_COMMANDLINE) {
-            System.out.println("==Frequent itemsets (min_sup=" +
-                               (minSupport * 100) + "%)");
+            System.out.println(header);
         }
         if (PRINT_RULES_TO_OUTPUT_FILE) {
-            outputWriter.println("==Frequent itemsets (min_sup=" +
-                                 (minSupport * 100) + "%)");
+            outputWriter.println(header);
         }
 
         ArrayList<WordsetSupportPair> wordsetAndSupportList =
             new ArrayList<WordsetSupportPair>();
-        for (Set<String> frequentItemset : frequentItemsets) {
-            wordsetAndSupportList.add(
-                new WordsetSupportPair(frequentItemset,
+        for (Itemset frequentItemset : frequentItemsets) {
+            WordsetSupportPair wordsetAndSupport =
+                new WordsetSupportPair(dataset.getDictionary().decode(
+                                           frequentItemset),
                                        dataset.getItemsetSupport(
-                                           frequentItemset)));
+                                           frequentItemset));
+            if (dataset.isSampled()) {
+                wordsetAndSupport.interval = SampleBounds.formatInterval(
+                    dataset.itemsetCounts.get(frequentItemset),
+                    dataset.size());
+            }
+            wordsetAndSupportList.add(wordsetAndSupport);
         }
 
         Collections.sort(wordsetAndSupportList);
@@ -106,109 +321,89 @@ public class RuleMiningMain {
     }
 
 
-    public static void outputRules(Dataset dataset, Set<Set<String>> set,
+    public static void outputRules(Dataset dataset, Set<Itemset> set,
                                    double min_conf, PrintWriter outputWriter) {
+        String header = "==High-confidence association rules (min_conf=" +
+            min_conf * 100 + "%" +
+            (dataset.isSampled() ? ", estimated from a sample" : "") + ")";
         if (PRINT_RULES_TO_COMMANDLINE) {
-            System.out.println("==High-confidence association rules " +
-                               "(min_conf=" + min_conf * 100 + "%)");
+            System.out.println(header);
         }
         if (PRINT_RULES_TO_OUTPUT_FILE) {
-            outputWriter.println("==High-confidence association rules " +
-                                 "(min_conf=" + min_conf * 100 + "%)");
+            outputWriter.println(header);
         }
 
         //Take as input or read from global table
 
-        for (Set<String> st : set) {
-            check_association_rules(st, min_conf, dataset);
-        }
+        MiningStep step = dataset.getMetrics().start("rules", 0);
+        RuleGenerator ruleGenerator = new RuleGenerator(
+            dataset, min_conf, inputParser.getMaxConsequentSize(),
+            inputParser.getThreads(), inputParser.getConstraints());
+        rules_list.addAll(ruleGenerator.generate(set));
         Collections.sort(rules_list);
+        ItemDictionary dictionary = dataset.getDictionary();
         for (Rule_confidence rules : rules_list) {
+            String rule = rules.format(dictionary);
+            if (dataset.isSampled()) {
+                rule += " " + formatIntervals(dataset, rules);
+            }
             if (PRINT_RULES_TO_COMMANDLINE) {
-                System.out.println(rules.formatted_assosciation_rule);
+                System.out.println(rule);
             }
             if (PRINT_RULES_TO_OUTPUT_FILE) {
-                outputWriter.println(rules.formatted_assosciation_rule);
+                outputWriter.println(rule);
             }
         }
+        step.candidatesGenerated = ruleGenerator.getRulesTried();
+        step.candidatesSurviving = rules_list.size();
+        dataset.getMetrics().finish(step, dataset.itemsetCounts.size());
     }
 
 
-    public  static void check_association_rules(Set<String> st, double min_conf, Dataset dataset ) {
-        for (String s : st) {
-            generate_left_and_check(st, s, min_conf, dataset);
-        }
-    }
-
-
-    public static void generate_left_and_check(Set<String> st, String right, double min_conf, Dataset dataset) {
-        Set<String> left = new HashSet<String>() ;
-        Set<String> leftuniright = new HashSet<String>();
-
-        for (String s : st) {
-            if (!s.equals(right)) {
-                left.add(s);
-                leftuniright.add(s);
-            }
+    /*
+    * Returns the 95% intervals of the confidence and support of a rule mined
+    * from a sample (see SampleBounds).
+    */
+    private static String formatIntervals(Dataset dataset,
+                                          Rule_confidence rule) {
+        int[] union = new int[rule.left.size() + rule.right.size()];
+        for (int i = 0; i < rule.left.size(); i++) {
+            union[i] = rule.left.get(i);
         }
-        Set<String> rightSet = new HashSet<String>();
-        rightSet.add(right);
-        double LHS, RHS;
-        if (!left.isEmpty()) {
-            LHS = dataset.getItemsetSupport(left);
-            RHS = dataset.getItemsetSupport(rightSet);
-
-            leftuniright.add(right);
-            double LHSuniRHS = dataset.getItemsetSupport(leftuniright);
-
-            double conf = 100 * (LHSuniRHS / LHS);
-            double supp = 100 * LHSuniRHS;
-            double interestingness = 100 * LHSuniRHS / (LHS * RHS);
-            if (conf > 100 * min_conf) {
-                // [diary] => [pen] (Conf: 100.0%, Supp: 75%)
-                String rule = new String();
-                rule += "[";
-                int index = 1;
-                for (String str : left) {
-                    if (index != 1) {
-                        rule += ",";
-                    }
-                    rule += str;
-                    index++;
-                }
-                rule += "] => [" + right + "] ";
-                String temp = "(Conf: " + conf + "%, Supp: " + supp + "%)";
-                rule += temp;
-                // System.out.println(rule);
-
-                Rule_confidence obj = new Rule_confidence(rule, left, right, supp, conf, interestingness);
-                rules_list.add(obj);
-            }
+        for (int i = 0; i < rule.right.size(); i++) {
+            union[rule.left.size() + i] = rule.right.get(i);
         }
+        Arrays.sort(union);
+        int ruleCount = dataset.itemsetCounts.get(new Itemset(union));
+        int leftCount = dataset.itemsetCounts.get(rule.left);
+        return "[95% CI: Conf " +
+               SampleBounds.formatInterval(ruleCount, leftCount) +
+               ", Supp " +
+               SampleBounds.formatInterval(ruleCount, dataset.size()) + "]";
     }
-}
 
 
-class Rule_confidence implements Comparable<Rule_confidence> {
-    String formatted_assosciation_rule;
-    Set<String> left;
-    String right;
-    Double support;
-    Double confidence;
-    Double interestingness;
-
-    public Rule_confidence(String formatted_rule, Set<String> left_side, String right_side, double supp, double conf, double interestingness) {
-        formatted_assosciation_rule = formatted_rule;
-        left = left_side;
-        right = right_side;
-        support = supp;
-        confidence = conf;
-        this.interestingness = interestingness;
-    }
-
-    public int compareTo(Rule_confidence rule) {
-        return (rule.confidence).compareTo(this.confidence);
-        // return (rule.interestingness).compareTo(this.interestingness);
+    /*
+    * Writes the metrics of the run (see MiningMetrics) to metrics.json, next
+    * to output.txt.
+    */
+    private static void writeMetrics(Dataset dataset) {
+        Map<String, Object> run = new LinkedHashMap<String, Object>();
+        run.put("dataset", inputParser.getDatasetFilename());
+        run.put("minSupport", inputParser.getMinSupport());
+        run.put("minConfidence", inputParser.getMinConfidence());
+        run.put("engine", inputParser.getEngine());
+        run.put("threads", inputParser.getThreads());
+        run.put("workers", inputParser.getWorkers());
+        run.put("baskets", dataset.size());
+        run.put("storedBaskets", dataset.storedSize());
+        run.put("items", dataset.getDictionary().size());
+        try {
+            dataset.getMetrics().writeJson(new File("metrics.json"), run);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write metrics.json: " +
+                               e.getMessage());
+        }
     }
 }
 
@@ -216,6 +411,9 @@ class Rule_confidence implements Comparable<Rule_confidence> {
 class WordsetSupportPair implements Comparable<WordsetSupportPair> {
     Set<String> wordset;
     Double support;
+    // 95% interval of the support when it is estimated from a sample, or
+    // null.
+    String interval = null;
 
     public WordsetSupportPair(Set<String> wordset, Double support) {
         this.wordset = wordset;
@@ -282,6 +480,7 @@ class WordsetSupportPair implements Comparable<WordsetSupportPair> {
             }
         }
         wordsetString += "]";
-        return wordsetString + ", " + (support * 100) + "%";
+        return wordsetString + ", " + (support * 100) + "%" +
+               (interval == null ? "" : " (95% CI: " + interval + ")");
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+import java.util.*;
+
+/**
+* An association rule left => right, with its support and confidence in
+* percent, as written to output.txt.
+*/
+public class Rule_confidence implements Comparable<Rule_confidence> {
+    Itemset left;
+    Itemset right;
+    Double support;
+    Double confidence;
+    Double interestingness;
+
+    public Rule_confidence(Itemset left_side, Itemset right_side, double supp, double conf, double interestingness) {
+        left = left_side;
+        right = right_side;
+        support = supp;
+        confidence = conf;
+        this.interestingness = interestingness;
+    }
+
+    public int compareTo(Rule_confidence rule) {
+        return (rule.confidence).compareTo(this.confidence);
+        // return (rule.interestingness).compareTo(this.interestingness);
+    }
+
+    // [diary] => [pen] (Conf: 100.0%, Supp: 75%)
+    public String format(ItemDictionary dictionary) {
+        StringBuilder rule = new StringBuilder();
+        rule.append("[");
+        appendItems(rule, dictionary.decode(left));
+        rule.append("] => [");
+        appendItems(rule, dictionary.decode(right));
+        rule.append("] (Conf: ").append(confidence).append("%, Supp: ")
+            .append(support).append("%)");
+        return rule.toString();
+    }
+
+    private static void appendItems(StringBuilder rule, Set<String> items) {
+        boolean first = true;
+        for (String str : items) {
+            if (!first) {
+                rule.append(",");
+            }
+            rule.append(str);
+            first = false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+* Error bounds for mining a random sample of the rows of a file instead of all
+* of them (see LoadOptions.sampleSize).
+*
+* The support of an itemset on a uniform sample of n rows is a binomial
+* proportion, so it gets a Wilson score interval, and so does the confidence
+* of a rule, which is the proportion of the sampled rows containing the
+* left-hand side that also contain the right-hand side.
+*
+* An itemset whose support in the file is at least min_sup shows a support
+* below min_sup - epsilon on the sample with probability at most
+* exp(-2 n epsilon^2) (Hoeffding), so a sample that Dataset.verifySample
+* checks against the whole file is mined at that lowered threshold, to make
+* missing a frequent itemset unlikely, as in Toivonen's "Sampling Large
+* Databases for Association Rules". A sample that is not verified is mined at
+* min_sup itself, and its itemsets are reported as estimates.
+*/
+public class SampleBounds {
+    // Two-sided 95% quantile of the normal distribution.
+    private static final double Z = 1.959963984540054;
+    // Largest probability of missing any one frequent itemset.
+    private static final double MISS_PROBABILITY = 0.05;
+
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the support threshold to mine a sample of sampleSize rows at,
+    * so that an itemset with support minSupport in the file is missed with
+    * probability at most 5%. The threshold is never lowered below half of
+    * minSupport, since mining a small sample close to zero support finds
+    * nearly every itemset; the 5% bound then does not hold, and an itemset
+    * the sample missed only costs verification another scan.
+    */
+    public static double loweredMinSupport(double minSupport,
+                                           int sampleSize) {
+        double epsilon =
+            Math.sqrt(Math.log(1 / MISS_PROBABILITY) / (2.0 * sampleSize));
+        return Math.max(minSupport / 2, minSupport - epsilon);
+    }
+
+
+    /**
+    * Returns the 95% Wilson score interval {low, high} of a proportion of
+    * which count out of n trials were observed.
+    */
+    public static double[] interval(int count, int n) {
+        if (n == 0) {
+            return new double[] {0, 1};
+        }
+        double p = (double)count / n;
+        double z2 = Z * Z;
+        double center = (p + z2 / (2.0 * n)) / (1 + z2 / n);
+        double halfWidth = Z / (1 + z2 / n) *
+            Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+        return new double[] {Math.max(0, center - halfWidth),
+                             Math.min(1, center + halfWidth)};
+    }
+
+
+    /**
+    * Returns the interval of count out of n as "low%-high%".
+    */
+    public static String formatInterval(int count, int n) {
+        double[] bounds = interval(count, n);
+        return (bounds[0] * 100) + "%-" + (bounds[1] * 100) + "%";
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+* A binary snapshot of an encoded dataset and of the itemset counts mined
+* from it at some minimum support, so that later runs on the same CSV file
+* can skip parsing it and, at the same or a higher support, mining it too.
+*
+* The snapshot records the size and modification time of the CSV file and the
+* load options that change the baskets, and matches() tells whether it still
+* describes a file. It is read back by memory-mapping the file and copying
+* each section out in bulk.
+*
+* Layout (big-endian): a header, then the dictionary (item lengths followed by
+* their UTF-8 bytes), the basket offsets, items and weights, and finally every
+* counted itemset as its size, its item ids and its count.
+*/
+public class SnapshotFile {
+    private static final long MAGIC = 0x4152534e41503031L; // "ARSNAP01"
+
+    // The CSV file the snapshot was made from.
+    public long sourceLength;
+    public long sourceLastModified;
+    // The load options that change the stored baskets.
+    public boolean includeEmptyBaskets;
+    public int weightColumn;
+    public boolean collapseDuplicates;
+    // The support the itemset counts were mined at.
+    public double minSupport;
+
+    // UTF-8 bytes of every item, indexed by id.
+    public byte[][] items;
+    // Packed baskets, laid out as in Dataset.
+    public int numTransactions;
+    public int totalWeight;
+    public int[] transactionOffsets;
+    public int[] transactionItems;
+    // Weight of every basket, or null if they all weigh 1.
+    public int[] transactionWeights;
+    public Map<Itemset, Integer> itemsetCounts;
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns whether the snapshot was made from source in its current state,
+    * with the same options.
+    */
+    public boolean matches(File source, LoadOptions options) {
+        return source.length() == sourceLength &&
+               source.lastModified() == sourceLastModified &&
+               options.includeEmptyBaskets == includeEmptyBaskets &&
+               options.weightColumn == weightColumn &&
+               options.collapseDuplicates == collapseDuplicates;
+    }
+
+
+    /**
+    * Writes the snapshot to file, replacing it if it exists.
+    */
+    public void write(File file) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            output.writeLong(MAGIC);
+            output.writeLong(sourceLength);
+            output.writeLong(sourceLastModified);
+            output.writeBoolean(includeEmptyBaskets);
+            output.writeInt(weightColumn);
+            output.writeBoolean(collapseDuplicates);
+            output.writeDouble(minSupport);
+
+            output.writeInt(items.length);
+            for (byte[] item : items) {
+                output.writeInt(item.length);
+            }
+            for (byte[] item : items) {
+                output.write(item);
+            }
+
+            output.writeInt(numTransactions);
+            output.writeInt(totalWeight);
+            output.writeBoolean(transactionWeights != null);
+            writeInts(output, transactionOffsets, numTransactions + 1);
+            writeInts(output, transactionItems,
+                      transactionOffsets[numTransactions]);
+            if (transactionWeights != null) {
+                writeInts(output, transactionWeights, numTransactions);
+            }
+
+            output.writeInt(itemsetCounts.size());
+            for (Map.Entry<Itemset, Integer> entry : itemsetCounts.entrySet()) {
+                Itemset itemset = entry.getKey();
+                output.writeInt(itemset.size());
+                for (int i = 0; i < itemset.size(); i++) {
+                    output.writeInt(itemset.get(i));
+                }
+                output.writeInt(entry.getValue());
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+
+    /**
+    * Reads a snapshot written by write.
+    */
+    public static SnapshotFile read(File file) throws IOException {
+        FileChannel channel =
+            FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (RuntimeException e) {
+            // Truncated or corrupted.
+            throw new IOException("Error: " + file + " is not a snapshot.", e);
+        } finally {
+            channel.close();
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private static SnapshotFile read(MappedByteBuffer buffer)
+            throws IOException {
+        if (buffer.getLong() != MAGIC) {
+            throw new IOException("Error: not a snapshot file.");
+        }
+        SnapshotFile snapshot = new SnapshotFile();
+        snapshot.sourceLength = buffer.getLong();
+        snapshot.sourceLastModified = buffer.getLong();
+        snapshot.includeEmptyBaskets = buffer.get() != 0;
+        snapshot.weightColumn = buffer.getInt();
+        snapshot.collapseDuplicates = buffer.get() != 0;
+        snapshot.minSupport = buffer.getDouble();
+
+        int[] itemLengths = readInts(buffer, buffer.getInt());
+        snapshot.items = new byte[itemLengths.length][];
+        for (int i = 0; i < itemLengths.length; i++) {
+            snapshot.items[i] = new byte[itemLengths[i]];
+            buffer.get(snapshot.items[i]);
+        }
+
+        snapshot.numTransactions = buffer.getInt();
+        snapshot.totalWeight = buffer.getInt();
+        boolean weighted = buffer.get() != 0;
+        snapshot.transactionOffsets =
+            readInts(buffer, snapshot.numTransactions + 1);
+        snapshot.transactionItems = readInts(
+            buffer, snapshot.transactionOffsets[snapshot.numTransactions]);
+        if (weighted) {
+            snapshot.transactionWeights =
+                readInts(buffer, snapshot.numTransactions);
+        }
+
+        int numCounts = buffer.getInt();
+        IntBuffer ints = buffer.asIntBuffer();
+        snapshot.itemsetCounts = new LinkedHashMap<Itemset, Integer>();
+        for (int c = 0; c < numCounts; c++) {
+            int[] itemset = new int[ints.get()];
+            ints.get(itemset);
+            snapshot.itemsetCounts.put(new Itemset(itemset), ints.get());
+        }
+        return snapshot;
+    }
+
+
+    private static void writeInts(DataOutputStream output, int[] values,
+                                  int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            output.writeInt(values[i]);
+        }
+    }
+
+
+    /*
+    * Copies the next length ints of buffer out in one go and moves past them.
+    */
+    private static int[] readInts(MappedByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+        return values;
+    }
+}
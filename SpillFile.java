@@ -0,0 +1,257 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+* A compact binary copy of the baskets of a dataset on disk, used by datasets
+* that are too big to keep in memory (see LoadOptions.streaming). Reading it
+* back is much cheaper than parsing the CSV file again, since items are
+* already encoded.
+*
+* Every basket is stored as a run of varints: the number of bytes of the rest
+* of the record, the weight of the basket, its number of items, and then its
+* sorted item ids as gaps from the previous id.
+*
+* The byte offset of every INDEX_INTERVAL-th basket is kept in memory while
+* the file is written, so a scan of a range of baskets (such as a partition of
+* partitionedAlgorithm) seeks close to its first basket instead of skipping
+* every record before it.
+*/
+public class SpillFile {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Baskets between two entries of the offset index.
+    private static final int INDEX_INTERVAL = 4096;
+
+    private File file;
+    private OutputStream output;
+    private byte[] writeBuffer = new byte[BUFFER_SIZE];
+    private int writeLength = 0;
+    private int numBaskets = 0;
+    // Bytes written out to the file so far, not counting writeBuffer.
+    private long flushedLength = 0;
+    // Byte offset of basket i * INDEX_INTERVAL, for every i.
+    private long[] basketOffsets = new long[16];
+
+
+    /**
+    * Creates an empty spill file in directory (the default temporary
+    * directory if null). The file is deleted when the program exits.
+    */
+    public SpillFile(File directory) throws IOException {
+        file = File.createTempFile("baskets", ".spill", directory);
+        file.deleteOnExit();
+        output = new FileOutputStream(file);
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Appends the basket items[start..end), which must be sorted and free of
+    * repeated items, with the given weight. Baskets can still be appended
+    * after finish, as long as finish is called again before the next scan.
+    */
+    public void append(int[] items, int start, int end, int weight)
+            throws IOException {
+        if (output == null) {
+            output = new FileOutputStream(file, true);
+        }
+        // A varint takes at most 5 bytes.
+        int maxRecordLength = 5 * (end - start + 3);
+        if (writeLength + maxRecordLength > writeBuffer.length) {
+            flush();
+            if (maxRecordLength > writeBuffer.length) {
+                writeBuffer = new byte[maxRecordLength];
+            }
+        }
+        if (numBaskets % INDEX_INTERVAL == 0) {
+            int entry = numBaskets / INDEX_INTERVAL;
+            if (entry == basketOffsets.length) {
+                basketOffsets = Arrays.copyOf(basketOffsets, 2 * entry);
+            }
+            basketOffsets[entry] = flushedLength + writeLength;
+        }
+        // Write the record after room for its length, then move it back once
+        // its length is known.
+        int recordStart = writeLength + 5;
+        int position = writeVarint(writeBuffer, recordStart, weight);
+        position = writeVarint(writeBuffer, position, end - start);
+        int previous = 0;
+        for (int i = start; i < end; i++) {
+            position = writeVarint(writeBuffer, position, items[i] - previous);
+            previous = items[i];
+        }
+        int lengthEnd = writeVarint(writeBuffer, writeLength,
+                                    position - recordStart);
+        System.arraycopy(writeBuffer, recordStart, writeBuffer, lengthEnd,
+                         position - recordStart);
+        writeLength = lengthEnd + position - recordStart;
+        numBaskets++;
+    }
+
+
+    /**
+    * Writes out the last baskets. Must be called once after the last append
+    * and before the first scan.
+    */
+    public void finish() throws IOException {
+        if (output != null) {
+            flush();
+            output.close();
+            output = null;
+        }
+    }
+
+
+    /**
+    * Returns the number of baskets in the file.
+    */
+    public int size() {
+        return numBaskets;
+    }
+
+
+    /**
+    * Reads the file from the start and calls visitor once for every basket,
+    * in the order they were appended.
+    */
+    public void scan(TransactionVisitor visitor) {
+        scan(0, numBaskets, visitor);
+    }
+
+
+    /**
+    * Calls visitor once for every basket from index from up to (but not
+    * including) index to, in the order they were appended. The scan starts
+    * at the indexed basket closest before from, and the fewer than
+    * INDEX_INTERVAL baskets between them are skipped without being decoded.
+    */
+    public void scan(int from, int to, TransactionVisitor visitor) {
+        try {
+            FileChannel channel =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                scan(channel, from, to, visitor);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                "Error: could not read spill file " + file, e);
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private void flush() throws IOException {
+        output.write(writeBuffer, 0, writeLength);
+        flushedLength += writeLength;
+        writeLength = 0;
+    }
+
+
+    private void scan(FileChannel channel, int from, int to,
+                      TransactionVisitor visitor) throws IOException {
+        int first = Math.min(from, numBaskets) / INDEX_INTERVAL *
+                    INDEX_INTERVAL;
+        if (first < numBaskets) {
+            channel.position(basketOffsets[first / INDEX_INTERVAL]);
+        }
+        Reader reader = new Reader(channel);
+        int[] items = new int[16];
+        for (int b = first; b < to; b++) {
+            reader.ensureAvailable(5);
+            int recordLength = reader.readVarint();
+            reader.ensureAvailable(recordLength);
+            if (b < from) {
+                reader.skip(recordLength);
+                continue;
+            }
+            int weight = reader.readVarint();
+            int size = reader.readVarint();
+            if (items.length < size) {
+                items = new int[Math.max(size, 2 * items.length)];
+            }
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += reader.readVarint();
+                items[i] = previous;
+            }
+            visitor.visit(items, 0, size, weight);
+        }
+    }
+
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte)value;
+        return position;
+    }
+
+
+    /**
+    * Reads a spill file through a buffer that always holds whole records.
+    */
+    private static class Reader {
+        private FileChannel channel;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+
+        /**
+        * Reads until at least n bytes past the current position are in the
+        * buffer, or the file ends.
+        */
+        void ensureAvailable(int n) throws IOException {
+            if (limit - position >= n) {
+                return;
+            }
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            if (n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, n);
+            }
+            while (limit < n) {
+                int read = channel.read(
+                    ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+                if (read < 0) {
+                    return;
+                }
+                limit += read;
+            }
+        }
+
+
+        void skip(int n) {
+            position += n;
+        }
+
+
+        int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
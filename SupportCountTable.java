@@ -0,0 +1,323 @@
+import java.util.*;
+
+/**
+* The support counts of itemsets, kept in a few primitive arrays instead of a
+* map of boxed entries. The items of every itemset are packed one after the
+* other into a single int array, and an open-addressing hash table with
+* linear probing maps itemsets to their index. Counts are plain ints, so
+* looking up or setting a count allocates nothing, and the garbage collector
+* only sees a handful of large arrays however many itemsets are held.
+*
+* Itemsets are iterated in the order they were first put, like a
+* LinkedHashMap. The engines only put the itemsets that turned out frequent,
+* and removeBelow drops those that are not frequent at a higher count, so the
+* table does not hold every candidate ever counted.
+*
+* The table can be given a limit on the bytes its arrays take. Growing past it
+* throws an IllegalStateException, so a run with too many frequent itemsets
+* stops with a message instead of thrashing the garbage collector or running
+* out of memory.
+*/
+public class SupportCountTable extends AbstractMap<Itemset, Integer> {
+    private static final int EMPTY = -1;
+
+    // The items of itemset e are items[offsets[e]] up to (but not including)
+    // items[offsets[e + 1]].
+    private int[] items = new int[256];
+    private int[] offsets = new int[65];
+    private int[] counts = new int[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+    // Index of the itemset in each slot, or EMPTY. The length is a power of
+    // 2, and at most half of the slots are used.
+    private int[] slots = newSlots(128);
+    // Largest number of bytes the arrays may take, or 0 for no limit.
+    private long maxBytes;
+    private Set<Map.Entry<Itemset, Integer>> entrySet = null;
+
+
+    public SupportCountTable() {
+        this(0);
+    }
+
+
+    /**
+    * A table whose arrays may take at most maxBytes bytes (0 for no limit).
+    */
+    public SupportCountTable(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Itemset && find((Itemset)key) != EMPTY;
+    }
+
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Itemset)) {
+            return null;
+        }
+        int index = find((Itemset)key);
+        return index == EMPTY ? null : counts[index];
+    }
+
+
+    /**
+    * Returns the count of itemset, or -1 if it has none. Unlike get, the
+    * count is not boxed.
+    */
+    public int getCount(Itemset itemset) {
+        int index = find(itemset);
+        return index == EMPTY ? -1 : counts[index];
+    }
+
+
+    @Override
+    public Integer put(Itemset itemset, Integer count) {
+        int previous = putCount(itemset, count);
+        return previous == -1 ? null : previous;
+    }
+
+
+    /**
+    * Sets the count of itemset and returns its previous count, or -1 if it
+    * had none.
+    */
+    public int putCount(Itemset itemset, int count) {
+        int hash = itemset.hashCode();
+        int slot = slotOf(itemset, hash);
+        if (slots[slot] != EMPTY) {
+            int previous = counts[slots[slot]];
+            counts[slots[slot]] = count;
+            return previous;
+        }
+        ensureCapacity(size + 1, offsets[size] + itemset.size());
+        if (2 * (size + 1) > slots.length) {
+            rehash(2 * slots.length);
+            slot = slotOf(itemset, hash);
+        }
+        int offset = offsets[size];
+        for (int i = 0; i < itemset.size(); i++) {
+            items[offset + i] = itemset.get(i);
+        }
+        offsets[size + 1] = offset + itemset.size();
+        counts[size] = count;
+        hashes[size] = hash;
+        slots[slot] = size;
+        size++;
+        return -1;
+    }
+
+
+    /**
+    * Drops the itemsets whose count is below minCount, keeping the order of
+    * the others, and returns how many were dropped.
+    */
+    public int removeBelow(int minCount) {
+        int kept = 0;
+        int keptItems = 0;
+        for (int index = 0; index < size; index++) {
+            if (counts[index] < minCount) {
+                continue;
+            }
+            int length = offsets[index + 1] - offsets[index];
+            System.arraycopy(items, offsets[index], items, keptItems, length);
+            offsets[kept] = keptItems;
+            counts[kept] = counts[index];
+            hashes[kept] = hashes[index];
+            keptItems += length;
+            kept++;
+        }
+        offsets[kept] = keptItems;
+        int removed = size - kept;
+        size = kept;
+        rehash(slots.length);
+        return removed;
+    }
+
+
+    @Override
+    public void clear() {
+        size = 0;
+        Arrays.fill(slots, EMPTY);
+    }
+
+
+    /**
+    * Returns the number of bytes taken by the arrays of the table.
+    */
+    public long memoryBytes() {
+        return 4L * (items.length + offsets.length + counts.length +
+                     hashes.length + slots.length);
+    }
+
+
+    /**
+    * Returns the itemsets and their counts in the order they were first put.
+    * The entries are built as they are visited, and do not support setValue
+    * or removal.
+    */
+    @Override
+    public Set<Map.Entry<Itemset, Integer>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<Itemset, Integer>>() {
+                public int size() {
+                    return size;
+                }
+
+                public Iterator<Map.Entry<Itemset, Integer>> iterator() {
+                    return new Iterator<Map.Entry<Itemset, Integer>>() {
+                        private int next = 0;
+
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        public Map.Entry<Itemset, Integer> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<Itemset, Integer> entry =
+                                new AbstractMap.SimpleImmutableEntry<
+                                        Itemset, Integer>(
+                                    itemsetAt(next), counts[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Returns the index of itemset, or EMPTY if it is not in the table.
+    */
+    private int find(Itemset itemset) {
+        int slot = slotOf(itemset, itemset.hashCode());
+        return slots[slot];
+    }
+
+
+    /*
+    * Returns the slot that holds itemset, or the empty slot where it would
+    * go.
+    */
+    private int slotOf(Itemset itemset, int hash) {
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != EMPTY) {
+            int index = slots[slot];
+            if (hashes[index] == hash && itemsetEquals(index, itemset)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    private boolean itemsetEquals(int index, Itemset itemset) {
+        int offset = offsets[index];
+        if (offsets[index + 1] - offset != itemset.size()) {
+            return false;
+        }
+        for (int i = 0; i < itemset.size(); i++) {
+            if (items[offset + i] != itemset.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private Itemset itemsetAt(int index) {
+        return new Itemset(
+            Arrays.copyOfRange(items, offsets[index], offsets[index + 1]));
+    }
+
+
+    /*
+    * Grows the arrays to hold numItemsets itemsets with numItems items in
+    * all, checking the memory limit first.
+    */
+    private void ensureCapacity(int numItemsets, int numItems) {
+        int itemsetCapacity = counts.length;
+        while (itemsetCapacity < numItemsets) {
+            itemsetCapacity *= 2;
+        }
+        int itemCapacity = items.length;
+        while (itemCapacity < numItems) {
+            itemCapacity *= 2;
+        }
+        if (itemsetCapacity == counts.length &&
+            itemCapacity == items.length) {
+            return;
+        }
+        // The slots are grown by rehash, which checks the limit again.
+        checkLimit(4L * (itemCapacity + 3L * itemsetCapacity + 1 +
+                         slots.length));
+        items = Arrays.copyOf(items, itemCapacity);
+        offsets = Arrays.copyOf(offsets, itemsetCapacity + 1);
+        counts = Arrays.copyOf(counts, itemsetCapacity);
+        hashes = Arrays.copyOf(hashes, itemsetCapacity);
+    }
+
+
+    private void rehash(int numSlots) {
+        checkLimit(memoryBytes() + 4L * (numSlots - slots.length));
+        slots = newSlots(numSlots);
+        int mask = numSlots - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(hashes[index]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index;
+        }
+    }
+
+
+    private void checkLimit(long bytes) {
+        if (maxBytes > 0 && bytes > maxBytes) {
+            throw new IllegalStateException(
+                "Error: the support counts of " + size + " itemsets " +
+                "need more than the limit of " + (maxBytes >> 20) +
+                " MB. Raise --count-memory or min_sup.");
+        }
+    }
+
+
+    private static int[] newSlots(int numSlots) {
+        int[] slots = new int[numSlots];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+
+    /*
+    * Spreads the bits of an Arrays.hashCode value, whose low bits are poor
+    * for itemsets of small ids.
+    */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
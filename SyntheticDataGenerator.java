@@ -0,0 +1,331 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+* Writes seeded synthetic datasets in the CSV format that Dataset reads, for
+* measuring performance (see benchmarks/) on inputs of any shape. The same
+* seed and options always give the same file.
+*
+* The "quest" generator follows the IBM Quest generator of Section 2.4.3 of
+* Agrawal and Srikant's paper. A pool of potentially large itemsets is drawn
+* first, each sharing some items with the one before it and carrying a random
+* weight and corruption level. Every basket then gets a Poisson number of
+* items, filled with pool itemsets picked by weight, and each of them loses
+* items at random according to its corruption level. Items are drawn from a
+* Zipf distribution, so skew 0 gives the uniform items of the paper and
+* larger values make a few items much more common than the rest.
+*
+* The "nyc" generator writes rows shaped like our INTEGRATED-DATASET: one
+* "Year:", "Ethnicity:", "Sex:" and "Cause of Death:" value per row, with
+* roughly the proportions of the real data. How much the causes of death
+* drift between ethnic groups and sexes grows with skew, so that there are
+* rules to find.
+*/
+public class SyntheticDataGenerator {
+    private static final String[] ETHNICITIES = {
+        "NON-HISPANIC WHITE", "NON-HISPANIC BLACK", "HISPANIC",
+        "ASIAN & PACIFIC ISLANDER"};
+    private static final double[] ETHNICITY_WEIGHTS = {48, 26, 17, 9};
+    private static final String[] CAUSES = {
+        "DISEASES OF HEART", "MALIGNANT NEOPLASMS",
+        "INFLUENZA (FLU) AND PNEUMONIA",
+        "CHRONIC LOWER RESPIRATORY DISEASES", "CEREBROVASCULAR DISEASE",
+        "DIABETES MELLITUS", "ACCIDENTS EXCEPT DRUG POISONING",
+        "PSYCH. SUBSTANCE USE & ACCIDENTAL DRUG POISONING",
+        "HUMAN IMMUNODEFICIENCY VIRUS DISEASE",
+        "ESSENTIAL HYPERTENSION AND RENAL DISEASES",
+        "\"ASSAULT (HOMICIDE: Y87.1, X85-Y09)\"",
+        "INTENTIONAL SELF-HARM (SUICIDE: X60-X84, Y87.0)",
+        "CHRONIC LIVER DISEASE AND CIRRHOSIS", "ALZHEIMER'S DISEASE",
+        "NEPHRITIS, NEPHROTIC SYNDROME AND NEPHRISIS", "SEPTICEMIA",
+        "ANEMIAS"};
+    private static final double[] CAUSE_WEIGHTS = {
+        400, 260, 60, 45, 40, 40, 20, 18, 18, 16, 12, 10, 10, 8, 8, 6, 2};
+    private static final int FIRST_YEAR = 2007;
+    private static final int NUM_YEARS = 8;
+
+    // Number of baskets (rows) to write.
+    public int rows = 100000;
+    // Number of distinct items of the quest generator.
+    public int items = 1000;
+    // Average number of items in a quest basket.
+    public double avgLength = 10;
+    // Zipf exponent of item popularity (quest), or spread of the causes of
+    // death between groups (nyc).
+    public double skew = 0;
+    // Number of potentially large itemsets of the quest generator, and their
+    // average size.
+    public int patterns = 2000;
+    public double avgPatternLength = 4;
+    public long seed = 1;
+
+    private Random random;
+
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Usage: java SyntheticDataGenerator quest|nyc <output filename> [options]
+    * with the options --rows=, --items=, --avg-length=, --skew=,
+    * --patterns=, --avg-pattern-length= and --seed=.
+    */
+    public static void main(String[] args) {
+        try {
+            if (args.length < 2 ||
+                !(args[0].equals("quest") || args[0].equals("nyc"))) {
+                throw new Exception("Usage: java SyntheticDataGenerator " +
+                    "quest|nyc <output filename> [--rows=<n>] " +
+                    "[--items=<n>] [--avg-length=<x>] [--skew=<x>] " +
+                    "[--patterns=<n>] [--avg-pattern-length=<x>] " +
+                    "[--seed=<n>]");
+            }
+            SyntheticDataGenerator generator = new SyntheticDataGenerator();
+            for (int i = 2; i < args.length; i++) {
+                generator.parseOption(args[i]);
+            }
+            File file = new File(args[1]);
+            if (args[0].equals("quest")) {
+                generator.writeQuest(file);
+            } else {
+                generator.writeTabular(file);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    /**
+    * Writes rows quest baskets to file.
+    */
+    public void writeQuest(File file) throws IOException {
+        random = new Random(seed);
+        double[] itemDistribution = zipf(items, skew);
+
+        // Potentially large itemsets, with their cumulative weights and
+        // corruption levels.
+        int[][] pool = new int[patterns][];
+        double[] poolDistribution = new double[patterns];
+        double[] corruption = new double[patterns];
+        int[] previous = new int[0];
+        double totalWeight = 0;
+        for (int p = 0; p < patterns; p++) {
+            int size = Math.max(1, poisson(avgPatternLength));
+            Set<Integer> itemset = new LinkedHashSet<Integer>();
+            // "some fraction of items in subsequent itemsets are chosen from
+            // the previous itemset generated"
+            double shared = Math.min(1, -0.5 * Math.log(random.nextDouble()));
+            for (int i = 0; i < previous.length &&
+                            itemset.size() < size * shared; i++) {
+                itemset.add(previous[random.nextInt(previous.length)]);
+            }
+            while (itemset.size() < Math.min(size, items)) {
+                itemset.add(sample(itemDistribution));
+            }
+            pool[p] = toArray(itemset);
+            previous = pool[p];
+            totalWeight += -Math.log(random.nextDouble());
+            poolDistribution[p] = totalWeight;
+            corruption[p] =
+                Math.max(0, Math.min(1, 0.5 + 0.1 * random.nextGaussian()));
+        }
+        for (int p = 0; p < patterns; p++) {
+            poolDistribution[p] /= totalWeight;
+        }
+
+        Writer writer = open(file);
+        try {
+            int carried = -1;
+            for (int row = 0; row < rows; row++) {
+                int size = Math.min(items, Math.max(1, poisson(avgLength)));
+                Set<Integer> basket = new LinkedHashSet<Integer>();
+                while (basket.size() < size) {
+                    int p = carried >= 0 ? carried : sample(poolDistribution);
+                    carried = -1;
+                    List<Integer> picked = new ArrayList<Integer>();
+                    for (int item : pool[p]) {
+                        picked.add(item);
+                    }
+                    Collections.shuffle(picked, random);
+                    while (!picked.isEmpty() &&
+                           random.nextDouble() < corruption[p]) {
+                        picked.remove(picked.size() - 1);
+                    }
+                    if (basket.size() + picked.size() > size &&
+                        !basket.isEmpty()) {
+                        // "in half the cases, the itemset is put in the
+                        // transaction anyway, and in the other half, it is
+                        // moved to the next transaction"
+                        if (random.nextBoolean()) {
+                            basket.addAll(picked);
+                        } else {
+                            carried = p;
+                        }
+                        break;
+                    }
+                    basket.addAll(picked);
+                }
+                StringBuilder line = new StringBuilder();
+                for (int item : basket) {
+                    if (line.length() > 0) {
+                        line.append(',');
+                    }
+                    line.append("item").append(item);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    /**
+    * Writes rows NYC-like rows to file.
+    */
+    public void writeTabular(File file) throws IOException {
+        random = new Random(seed);
+        double[] ethnicityDistribution = cumulative(ETHNICITY_WEIGHTS);
+        // Causes of death of each ethnicity and sex, drifted from the overall
+        // proportions by a random factor.
+        double[][] causeDistributions =
+            new double[2 * ETHNICITIES.length][];
+        for (int group = 0; group < causeDistributions.length; group++) {
+            double[] weights = new double[CAUSES.length];
+            for (int c = 0; c < CAUSES.length; c++) {
+                weights[c] =
+                    CAUSE_WEIGHTS[c] * Math.exp(skew * random.nextGaussian());
+            }
+            causeDistributions[group] = cumulative(weights);
+        }
+
+        Writer writer = open(file);
+        try {
+            for (int row = 0; row < rows; row++) {
+                int year = FIRST_YEAR + random.nextInt(NUM_YEARS);
+                int ethnicity = sample(ethnicityDistribution);
+                int sex = random.nextInt(2);
+                int cause = sample(
+                    causeDistributions[2 * ethnicity + sex]);
+                writer.write("Year:" + year +
+                             ",Ethnicity:" + ETHNICITIES[ethnicity] +
+                             ",Sex:" + (sex == 0 ? "FEMALE" : "MALE") +
+                             ",Cause of Death:" + CAUSES[cause] + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private void parseOption(String option) throws Exception {
+        int equals = option.indexOf('=');
+        if (!option.startsWith("--") || equals < 0) {
+            throw new Exception("Error: Unknown option " + option);
+        }
+        String name = option.substring(2, equals);
+        String value = option.substring(equals + 1);
+        try {
+            if (name.equals("rows")) {
+                rows = Integer.parseInt(value);
+            } else if (name.equals("items")) {
+                items = Integer.parseInt(value);
+            } else if (name.equals("avg-length")) {
+                avgLength = Double.parseDouble(value);
+            } else if (name.equals("skew")) {
+                skew = Double.parseDouble(value);
+            } else if (name.equals("patterns")) {
+                patterns = Integer.parseInt(value);
+            } else if (name.equals("avg-pattern-length")) {
+                avgPatternLength = Double.parseDouble(value);
+            } else if (name.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else {
+                throw new Exception("Error: Unknown option " + option);
+            }
+        } catch (NumberFormatException e) {
+            throw new Exception("Error: Invalid value in " + option);
+        }
+        if (rows < 0 || items < 1 || patterns < 1 || avgLength <= 0 ||
+            avgPatternLength <= 0 || skew < 0) {
+            throw new Exception("Error: Invalid value in " + option);
+        }
+    }
+
+
+    /*
+    * Returns the cumulative distribution of items drawn with probability
+    * proportional to 1 / (rank + 1)^exponent.
+    */
+    private static double[] zipf(int numItems, double exponent) {
+        double[] weights = new double[numItems];
+        for (int i = 0; i < numItems; i++) {
+            weights[i] = Math.pow(i + 1, -exponent);
+        }
+        return cumulative(weights);
+    }
+
+
+    private static double[] cumulative(double[] weights) {
+        double[] distribution = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            distribution[i] = total;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            distribution[i] /= total;
+        }
+        return distribution;
+    }
+
+
+    /*
+    * Returns an index drawn from a cumulative distribution.
+    */
+    private int sample(double[] distribution) {
+        int index = Arrays.binarySearch(distribution, random.nextDouble());
+        index = index >= 0 ? index + 1 : -index - 1;
+        return Math.min(index, distribution.length - 1);
+    }
+
+
+    private int poisson(double mean) {
+        if (mean > 30) {
+            // Normal approximation, as exp(-mean) underflows the loop below.
+            return (int)Math.max(0, Math.round(
+                mean + Math.sqrt(mean) * random.nextGaussian()));
+        }
+        double limit = Math.exp(-mean);
+        int k = 0;
+        double product = random.nextDouble();
+        while (product > limit) {
+            k++;
+            product *= random.nextDouble();
+        }
+        return k;
+    }
+
+
+    private static int[] toArray(Set<Integer> itemset) {
+        int[] array = new int[itemset.size()];
+        int i = 0;
+        for (int item : itemset) {
+            array[i++] = item;
+        }
+        return array;
+    }
+
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+}
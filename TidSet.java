@@ -0,0 +1,188 @@
+import java.util.*;
+
+/**
+* The ids of the transactions that contain an itemset (its tid-list), used by
+* the vertical mining engines. Dense sets are stored as a bitset with one bit
+* per transaction, and sparse sets as a sorted array of ids, whichever takes
+* less memory, so deep itemsets with low support stay small.
+*
+* When the transactions carry weights, the support of a set is the sum of the
+* weights of its transactions rather than their number.
+*/
+public class TidSet {
+    private long[] words;
+    private int[] tids;
+    private int cardinality;
+    private int support;
+    private int numTransactions;
+    // Weight of every transaction, or null if they all weigh 1.
+    private int[] weights;
+
+
+    private TidSet(long[] words, int[] tids, int cardinality,
+                   int numTransactions, int[] weights) {
+        this.words = words;
+        this.tids = tids;
+        this.cardinality = cardinality;
+        this.numTransactions = numTransactions;
+        this.weights = weights;
+        this.support = weights == null ? cardinality : sumOfWeights();
+    }
+
+
+    /**
+    * Builds a tid-set from the first length ids of tids, which must be sorted.
+    * numTransactions is the number of transactions in the dataset, and weights
+    * their weights (null if they all weigh 1).
+    */
+    public static TidSet fromSortedTids(int[] tids, int length,
+                                        int numTransactions, int[] weights) {
+        if (!denseIsSmaller(length, numTransactions)) {
+            return new TidSet(null, Arrays.copyOf(tids, length), length,
+                              numTransactions, weights);
+        }
+        long[] words = new long[(numTransactions + 63) >>> 6];
+        for (int i = 0; i < length; i++) {
+            words[tids[i] >>> 6] |= 1L << tids[i];
+        }
+        return new TidSet(words, null, length, numTransactions, weights);
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the number of transactions in the set.
+    */
+    public int cardinality() {
+        return cardinality;
+    }
+
+
+    /**
+    * Returns the total weight of the transactions in the set, which is their
+    * number when they are not weighted.
+    */
+    public int support() {
+        return support;
+    }
+
+
+    /**
+    * Returns the bitset of the set when its support is the number of bits
+    * set, or null if the set is stored as an array or its transactions are
+    * weighted. The array is not copied and must not be modified.
+    */
+    public long[] unweightedBitset() {
+        return weights == null ? words : null;
+    }
+
+
+    /**
+    * Returns the transactions that are in both this set and other.
+    */
+    public TidSet intersect(TidSet other) {
+        if (words != null && other.words != null) {
+            return intersectBitsets(other.words);
+        } else if (words != null) {
+            return other.intersectArrayWithBitset(words);
+        } else if (other.words != null) {
+            return intersectArrayWithBitset(other.words);
+        } else {
+            return intersectArrays(other);
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * A bitset costs one bit per transaction and an array 32 bits per member.
+    */
+    private static boolean denseIsSmaller(int cardinality,
+                                          int numTransactions) {
+        return (long)cardinality * 32 > numTransactions;
+    }
+
+
+    private int sumOfWeights() {
+        int sum = 0;
+        if (tids != null) {
+            for (int i = 0; i < cardinality; i++) {
+                sum += weights[tids[i]];
+            }
+            return sum;
+        }
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                sum += weights[(i << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return sum;
+    }
+
+
+    private TidSet intersectBitsets(long[] otherWords) {
+        long[] result = new long[Math.min(words.length, otherWords.length)];
+        int cardinality = 0;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = words[i] & otherWords[i];
+            cardinality += Long.bitCount(result[i]);
+        }
+        if (denseIsSmaller(cardinality, numTransactions)) {
+            return new TidSet(result, null, cardinality, numTransactions,
+                              weights);
+        }
+        // Sparse enough to be worth converting to an array.
+        int[] tids = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < result.length; i++) {
+            long word = result[i];
+            while (word != 0) {
+                tids[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return new TidSet(null, tids, cardinality, numTransactions, weights);
+    }
+
+
+    private TidSet intersectArrayWithBitset(long[] otherWords) {
+        int[] result = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < cardinality; i++) {
+            int tid = tids[i];
+            if ((tid >>> 6) < otherWords.length &&
+                (otherWords[tid >>> 6] & (1L << tid)) != 0) {
+                result[n++] = tid;
+            }
+        }
+        return new TidSet(null, Arrays.copyOf(result, n), n, numTransactions,
+                          weights);
+    }
+
+
+    private TidSet intersectArrays(TidSet other) {
+        int[] result = new int[Math.min(cardinality, other.cardinality)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < other.cardinality) {
+            if (tids[i] < other.tids[j]) {
+                i++;
+            } else if (tids[i] > other.tids[j]) {
+                j++;
+            } else {
+                result[n++] = tids[i];
+                i++;
+                j++;
+            }
+        }
+        return new TidSet(null, Arrays.copyOf(result, n), n, numTransactions,
+                          weights);
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.*;
+
+/**
+* Finds the k association rules with the highest support among those whose
+* confidence is above min_conf, without a min_sup to pick beforehand. This is
+* the TopKRules algorithm (Fournier-Viger, Wu and Tseng, "Mining Top-K
+* Association Rules").
+*
+* Rules are grown from rules between two items, by adding one item at a time
+* to their right-hand side and then to their left-hand side, and supports come
+* from intersecting tid-sets (see TidSet). Rules waiting to be expanded can be
+* very many, so they only keep their supports, and their tid-sets are rebuilt
+* from those of their items when their turn comes.
+*
+* The best rules so far are kept in a heap, and once it holds k rules the
+* support of the weakest one becomes the internal minimum support, so the
+* search space shrinks as good rules come in. Rules are always expanded in
+* order of decreasing support, which makes the threshold rise as fast as
+* possible.
+*
+* Rules tied with the k-th rule are all kept, so the result is every rule
+* whose support reaches that of the k-th best one.
+*/
+public class TopKRuleMiner {
+    private int k;
+    private double minConfidence;
+    private int datasetSize;
+    private int minCount;
+
+    private int[] items;
+    private TidSet[] itemTidSets;
+    // Best rules so far, weakest first.
+    private PriorityQueue<RuleCandidate> topRules;
+    // Rules still to be expanded, strongest first.
+    private PriorityQueue<RuleCandidate> candidates;
+
+
+    /**
+    * datasetSize is the number of baskets supports are relative to, and
+    * minCount the support count rules must reach from the start (at least 1).
+    */
+    public TopKRuleMiner(int k, double minConfidence, int datasetSize,
+                         int minCount) {
+        this.k = k;
+        this.minConfidence = minConfidence;
+        this.datasetSize = datasetSize;
+        this.minCount = Math.max(1, minCount);
+    }
+
+    //**************************************************************************
+    // PUBLIC METHODS
+    //**************************************************************************
+
+    /**
+    * Returns the top rules given the tid-sets of the items (null for items to
+    * leave out), sorted by antecedent and then by consequent.
+    */
+    public List<Rule_confidence> mine(TidSet[] tidSets) {
+        itemTidSets = tidSets;
+        items = new int[tidSets.length];
+        int numItems = 0;
+        for (int item = 0; item < tidSets.length; item++) {
+            if (tidSets[item] != null) {
+                items[numItems++] = item;
+            }
+        }
+        items = Arrays.copyOf(items, numItems);
+        topRules = new PriorityQueue<RuleCandidate>(
+            11, new Comparator<RuleCandidate>() {
+                public int compare(RuleCandidate rule1, RuleCandidate rule2) {
+                    return Integer.compare(rule1.support, rule2.support);
+                }
+            });
+        candidates = new PriorityQueue<RuleCandidate>(
+            11, new Comparator<RuleCandidate>() {
+                public int compare(RuleCandidate rule1, RuleCandidate rule2) {
+                    return Integer.compare(rule2.support, rule1.support);
+                }
+            });
+
+        // Rules between two items.
+        for (int i = 0; i < items.length; i++) {
+            TidSet tidSet1 = itemTidSets[items[i]];
+            for (int j = i + 1; j < items.length &&
+                            tidSet1.support() >= minCount; j++) {
+                TidSet tidSet2 = itemTidSets[items[j]];
+                if (tidSet2.support() < minCount) {
+                    continue;
+                }
+                int support = tidSet1.intersect(tidSet2).support();
+                if (support < minCount) {
+                    continue;
+                }
+                consider(new int[] {items[i]}, new int[] {items[j]},
+                         tidSet1.support(), support, true);
+                consider(new int[] {items[j]}, new int[] {items[i]},
+                         tidSet2.support(), support, true);
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            RuleCandidate candidate = candidates.poll();
+            if (candidate.support < minCount) {
+                // So is every candidate left.
+                break;
+            }
+            TidSet leftTidSet = tidSetOf(candidate.left, null);
+            TidSet ruleTidSet = tidSetOf(candidate.right, leftTidSet);
+            expandLeft(candidate, leftTidSet, ruleTidSet);
+            if (candidate.expandRight) {
+                expandRight(candidate, ruleTidSet);
+            }
+        }
+
+        List<RuleCandidate> found = new ArrayList<RuleCandidate>(topRules);
+        Collections.sort(found);
+        List<Rule_confidence> rules = new ArrayList<Rule_confidence>();
+        for (RuleCandidate rule : found) {
+            rules.add(toRule(rule));
+        }
+        return rules;
+    }
+
+
+    /**
+    * Returns the support count the k-th best rule reached, which all the
+    * rules returned by mine reach.
+    */
+    public int getMinCount() {
+        return minCount;
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Keeps the rule left => right if its confidence is high enough, and
+    * queues it for expansion. Confidence is not anti-monotone, so rules below
+    * min_conf can still lead to rules above it.
+    */
+    private void consider(int[] left, int[] right, int leftSupport,
+                          int support, boolean expandRight) {
+        RuleCandidate rule = new RuleCandidate(left, right, leftSupport,
+                                               support, expandRight);
+        if (confidence(rule) > 100 * minConfidence) {
+            save(rule);
+        }
+        candidates.add(rule);
+    }
+
+
+    /*
+    * Adds rule to the top rules and drops the weakest ones once there are
+    * more than k, unless that would leave fewer than k.
+    */
+    private void save(RuleCandidate rule) {
+        topRules.add(rule);
+        while (topRules.size() > k) {
+            int weakest = topRules.peek().support;
+            List<RuleCandidate> weakestRules = new ArrayList<RuleCandidate>();
+            while (!topRules.isEmpty() &&
+                   topRules.peek().support == weakest) {
+                weakestRules.add(topRules.poll());
+            }
+            if (topRules.size() < k) {
+                topRules.addAll(weakestRules);
+                break;
+            }
+        }
+        if (topRules.size() >= k) {
+            minCount = Math.max(minCount, topRules.peek().support);
+        }
+    }
+
+
+    /*
+    * Adds every item above the largest item of the left-hand side to it.
+    */
+    private void expandLeft(RuleCandidate rule, TidSet leftTidSet,
+                            TidSet ruleTidSet) {
+        int largest = rule.left[rule.left.length - 1];
+        for (int item : items) {
+            if (item <= largest || contains(rule.right, item) ||
+                itemTidSets[item].support() < minCount) {
+                continue;
+            }
+            int support = ruleTidSet.intersect(itemTidSets[item]).support();
+            if (support < minCount) {
+                continue;
+            }
+            consider(append(rule.left, item), rule.right,
+                     leftTidSet.intersect(itemTidSets[item]).support(),
+                     support, false);
+        }
+    }
+
+
+    /*
+    * Adds every item above the largest item of the right-hand side to it.
+    */
+    private void expandRight(RuleCandidate rule, TidSet ruleTidSet) {
+        int largest = rule.right[rule.right.length - 1];
+        for (int item : items) {
+            if (item <= largest || contains(rule.left, item) ||
+                itemTidSets[item].support() < minCount) {
+                continue;
+            }
+            int support = ruleTidSet.intersect(itemTidSets[item]).support();
+            if (support < minCount) {
+                continue;
+            }
+            consider(rule.left, append(rule.right, item), rule.leftSupport,
+                     support, true);
+        }
+    }
+
+
+    /*
+    * Returns the tid-set of the items of itemset, intersected with tidSet if
+    * it is not null.
+    */
+    private TidSet tidSetOf(int[] itemset, TidSet tidSet) {
+        for (int item : itemset) {
+            tidSet = tidSet == null ? itemTidSets[item]
+                                    : tidSet.intersect(itemTidSets[item]);
+        }
+        return tidSet;
+    }
+
+
+    /*
+    * Returns the confidence of rule in percent, computed from supports the
+    * way RuleGenerator does.
+    */
+    private double confidence(RuleCandidate rule) {
+        double LHS = (double)rule.leftSupport / datasetSize;
+        double LHSuniRHS = (double)rule.support / datasetSize;
+        return 100 * (LHSuniRHS / LHS);
+    }
+
+
+    private Rule_confidence toRule(RuleCandidate rule) {
+        double LHS = (double)rule.leftSupport / datasetSize;
+        double RHS =
+            (double)tidSetOf(rule.right, null).support() / datasetSize;
+        double LHSuniRHS = (double)rule.support / datasetSize;
+        return new Rule_confidence(
+            new Itemset(rule.left), new Itemset(rule.right), 100 * LHSuniRHS,
+            confidence(rule), 100 * LHSuniRHS / (LHS * RHS));
+    }
+
+
+    private static boolean contains(int[] itemset, int item) {
+        return Arrays.binarySearch(itemset, item) >= 0;
+    }
+
+
+    private static int[] append(int[] itemset, int item) {
+        int[] result = Arrays.copyOf(itemset, itemset.length + 1);
+        result[itemset.length] = item;
+        return result;
+    }
+}
+
+
+/**
+* A rule met by TopKRuleMiner, with the supports of its left-hand side and of
+* the whole rule. Only rules whose right-hand side was just grown may have it
+* grown again, so that every rule is reached once.
+*/
+class RuleCandidate implements Comparable<RuleCandidate> {
+    int[] left;
+    int[] right;
+    int leftSupport;
+    int support;
+    boolean expandRight;
+
+
+    public RuleCandidate(int[] left, int[] right, int leftSupport,
+                         int support, boolean expandRight) {
+        this.left = left;
+        this.right = right;
+        this.leftSupport = leftSupport;
+        this.support = support;
+        this.expandRight = expandRight;
+    }
+
+
+    @Override
+    public int compareTo(RuleCandidate other) {
+        int comparison = new Itemset(left).compareTo(new Itemset(other.left));
+        if (comparison != 0) {
+            return comparison;
+        }
+        return new Itemset(right).compareTo(new Itemset(other.right));
+    }
+}
@@ -0,0 +1,10 @@
+/**
+* Callback that receives baskets one at a time, as the item ids
+* items[start..end) and the weight of the basket (1 unless the dataset is
+* weighted). Dataset.scan passes every basket of a dataset sorted by id, and
+* CsvBasketReader every line of a file in field order. The array is shared
+* between calls and must not be kept.
+*/
+public interface TransactionVisitor {
+    void visit(int[] items, int start, int end, int weight);
+}
@@ -0,0 +1,107 @@
+import jdk.incubator.vector.*;
+
+/**
+* The kernel of BitsetCounter on the Vector API (jdk.incubator.vector), which
+* must be compiled and run with --add-modules jdk.incubator.vector (run.sh
+* does so for --simd). Each step loads a vector of words of the prefix once,
+* ANDs it with the same words of four candidates and adds the bit counts of
+* the results to four vector accumulators, which stay in registers until the
+* end of the block.
+*
+* The Vector API of JDK 17 has no lanewise bit count, so bits are counted
+* with the usual SWAR sequence of shifts, masks and adds on every lane. The
+* counts are summed per byte over up to 31 vectors before the bytes are
+* added up, which saves most of the shifts. Even so, on JDK 17 this kernel
+* is no faster than the scalar one, whose Long.bitCount is a single popcnt
+* instruction, so the scalar kernel stays the default.
+*/
+public class VectorBitsetCounter extends BitsetCounter {
+    private static final VectorSpecies<Long> SPECIES =
+        LongVector.SPECIES_PREFERRED;
+
+
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + "-bit)";
+    }
+
+
+    protected void countBlock(long[] prefix, long[] other0, long[] other1,
+                              long[] other2, long[] other3, int from, int to,
+                              int[] sums) {
+        LongVector sum0 = LongVector.zero(SPECIES);
+        LongVector sum1 = sum0;
+        LongVector sum2 = sum0;
+        LongVector sum3 = sum0;
+        int w = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        while (w < upperBound) {
+            // Bytes of bit counts, each at most 8, can take 31 additions
+            // before they overflow.
+            LongVector byteSum0 = LongVector.zero(SPECIES);
+            LongVector byteSum1 = byteSum0;
+            LongVector byteSum2 = byteSum0;
+            LongVector byteSum3 = byteSum0;
+            int end = Math.min(upperBound, w + 31 * SPECIES.length());
+            for (; w < end; w += SPECIES.length()) {
+                LongVector word = LongVector.fromArray(SPECIES, prefix, w);
+                byteSum0 = byteSum0.add(byteBitCounts(
+                    word.and(LongVector.fromArray(SPECIES, other0, w))));
+                byteSum1 = byteSum1.add(byteBitCounts(
+                    word.and(LongVector.fromArray(SPECIES, other1, w))));
+                byteSum2 = byteSum2.add(byteBitCounts(
+                    word.and(LongVector.fromArray(SPECIES, other2, w))));
+                byteSum3 = byteSum3.add(byteBitCounts(
+                    word.and(LongVector.fromArray(SPECIES, other3, w))));
+            }
+            sum0 = sum0.add(sumOfBytes(byteSum0));
+            sum1 = sum1.add(sumOfBytes(byteSum1));
+            sum2 = sum2.add(sumOfBytes(byteSum2));
+            sum3 = sum3.add(sumOfBytes(byteSum3));
+        }
+        // Bit counts of one block, which always fit in an int.
+        sums[0] += Math.toIntExact(sum0.reduceLanes(VectorOperators.ADD));
+        sums[1] += Math.toIntExact(sum1.reduceLanes(VectorOperators.ADD));
+        sums[2] += Math.toIntExact(sum2.reduceLanes(VectorOperators.ADD));
+        sums[3] += Math.toIntExact(sum3.reduceLanes(VectorOperators.ADD));
+        // The words left over after the last whole vector.
+        for (; w < to; w++) {
+            long word = prefix[w];
+            sums[0] += Long.bitCount(word & other0[w]);
+            sums[1] += Long.bitCount(word & other1[w]);
+            sums[2] += Long.bitCount(word & other2[w]);
+            sums[3] += Long.bitCount(word & other3[w]);
+        }
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    /*
+    * Returns the number of bits set in every byte of every lane of words.
+    */
+    private static LongVector byteBitCounts(LongVector words) {
+        // Counts of every 2, then 4, then 8 bits.
+        LongVector counts = words.sub(
+            words.lanewise(VectorOperators.LSHR, 1)
+                 .and(0x5555555555555555L));
+        counts = counts.and(0x3333333333333333L).add(
+            counts.lanewise(VectorOperators.LSHR, 2)
+                  .and(0x3333333333333333L));
+        return counts.add(counts.lanewise(VectorOperators.LSHR, 4))
+                     .and(0x0F0F0F0F0F0F0F0FL);
+    }
+
+
+    /*
+    * Returns the sum of the 8 bytes of every lane of byteCounts.
+    */
+    private static LongVector sumOfBytes(LongVector byteCounts) {
+        LongVector sums = byteCounts.and(0x00FF00FF00FF00FFL).add(
+            byteCounts.lanewise(VectorOperators.LSHR, 8)
+                      .and(0x00FF00FF00FF00FFL));
+        sums = sums.add(sums.lanewise(VectorOperators.LSHR, 16));
+        sums = sums.add(sums.lanewise(VectorOperators.LSHR, 32));
+        return sums.and(0xFFFFL);
+    }
+}
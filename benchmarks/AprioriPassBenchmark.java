@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Times the three steps of apriori pass k on their own: apriori-gen (the join
+* and prune steps) on L_{k-1}, building the candidate trie, and counting the
+* candidates over the baskets. L_{k-1} comes from a full apriori run in the
+* setup.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AprioriPassBenchmark extends SyntheticDataset {
+    @Param({"2", "3", "4"})
+    public int pass;
+
+    private Dataset dataset;
+    private List<int[]> largeKMinus1Itemsets;
+    private List<int[]> candidateKItemsets;
+    private CandidateTrie candidateTrie;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataset = loadDataset();
+        dataset.setThreads(threads);
+        // Sorted by size and then lexicographically, as aprioriGen needs.
+        largeKMinus1Itemsets = new ArrayList<int[]>();
+        for (Itemset itemset : dataset.aprioriAlgorithm(minSupport, 0)) {
+            if (itemset.size() == pass - 1) {
+                largeKMinus1Itemsets.add(itemset.toArray());
+            }
+        }
+        candidateKItemsets =
+            dataset.aprioriGen(largeKMinus1Itemsets, null);
+        candidateTrie = new CandidateTrie(candidateKItemsets,
+                                          dataset.getDictionary().size());
+    }
+
+
+    @Benchmark
+    public List<int[]> aprioriGen() {
+        return dataset.aprioriGen(largeKMinus1Itemsets, null);
+    }
+
+
+    @Benchmark
+    public CandidateTrie buildTrie() {
+        return new CandidateTrie(candidateKItemsets,
+                                 dataset.getDictionary().size());
+    }
+
+
+    @Benchmark
+    public int[] countCandidates() {
+        return dataset.countCandidates(candidateTrie);
+    }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Times finding all the frequent itemsets of a loaded dataset with each
+* engine (--engine).
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark extends SyntheticDataset {
+    @Param({"apriori", "eclat", "fpgrowth"})
+    public String engine;
+
+    private Dataset dataset;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataset = loadDataset();
+        dataset.setThreads(threads);
+    }
+
+
+    @Benchmark
+    public Set<Itemset> mine() {
+        if (engine.equals("eclat")) {
+            return dataset.eclatAlgorithm(minSupport);
+        } else if (engine.equals("fpgrowth")) {
+            return dataset.fpGrowthAlgorithm(minSupport);
+        }
+        return dataset.aprioriAlgorithm(minSupport, 0);
+    }
+}
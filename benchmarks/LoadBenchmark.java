@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Times loading a dataset: parsing the CSV file, encoding the items and
+* packing the baskets (Dataset.loadDataset).
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark extends SyntheticDataset {
+    @Param({"false", "true"})
+    public boolean collapseDuplicates;
+
+    private File file;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = datasetFile();
+    }
+
+
+    @Benchmark
+    public Dataset load() throws Exception {
+        LoadOptions options = loadOptions();
+        options.collapseDuplicates = collapseDuplicates;
+        return new Dataset(file.getPath(), options);
+    }
+}
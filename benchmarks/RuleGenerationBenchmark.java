@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+* Times generating the association rules of the frequent itemsets, with and
+* without the sorting and formatting that RuleMiningMain.outputRules does
+* before writing them.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleGenerationBenchmark extends SyntheticDataset {
+    @Param({"0.5"})
+    public double minConfidence;
+
+    @Param({"1", "2"})
+    public int maxConsequentSize;
+
+    private Dataset dataset;
+    private Set<Itemset> frequentItemsets;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataset = loadDataset();
+        dataset.setThreads(threads);
+        frequentItemsets = dataset.eclatAlgorithm(minSupport);
+    }
+
+
+    @Benchmark
+    public List<?> generate() {
+        return newRuleGenerator().generate(frequentItemsets);
+    }
+
+
+    @Benchmark
+    public void generateAndFormat(Blackhole blackhole) {
+        List<Rule_confidence> rules =
+            newRuleGenerator().generate(frequentItemsets);
+        Collections.sort(rules);
+        ItemDictionary dictionary = dataset.getDictionary();
+        for (Rule_confidence rule : rules) {
+            blackhole.consume(rule.format(dictionary));
+        }
+    }
+
+
+    private RuleGenerator newRuleGenerator() {
+        return new RuleGenerator(dataset, minConfidence, maxConsequentSize,
+                                 threads);
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Shared parameters of the benchmarks: the synthetic dataset to run on (see
+* SyntheticDataGenerator) and the min_sup to mine it at. Each combination is
+* generated once into the temporary directory and reused by later runs.
+*/
+@State(Scope.Benchmark)
+public abstract class SyntheticDataset {
+    // "quest" or "nyc".
+    @Param({"quest", "nyc"})
+    public String generator;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int items;
+
+    @Param({"10"})
+    public double avgLength;
+
+    @Param({"0", "1"})
+    public double skew;
+
+    @Param({"0.005"})
+    public double minSupport;
+
+    @Param({"1"})
+    public int threads;
+
+
+    /**
+    * Returns the CSV file of the dataset, writing it if it does not exist
+    * yet.
+    */
+    protected File datasetFile() throws IOException {
+        SyntheticDataGenerator dataGenerator = new SyntheticDataGenerator();
+        dataGenerator.rows = rows;
+        dataGenerator.items = items;
+        dataGenerator.avgLength = avgLength;
+        dataGenerator.skew = skew;
+        String name = generator.equals("nyc")
+            ? "synthetic-nyc-" + rows + "-" + skew + ".csv"
+            : "synthetic-quest-" + rows + "-" + items + "-" + avgLength +
+              "-" + skew + ".csv";
+        File file = new File(System.getProperty("java.io.tmpdir"), name);
+        if (!file.exists()) {
+            File partial = new File(file.getPath() + ".tmp");
+            if (generator.equals("nyc")) {
+                dataGenerator.writeTabular(partial);
+            } else {
+                dataGenerator.writeQuest(partial);
+            }
+            if (!partial.renameTo(file)) {
+                throw new IOException("Error: could not write " + file);
+            }
+        }
+        return file;
+    }
+
+
+    /**
+    * Returns the options the dataset is loaded with.
+    */
+    protected LoadOptions loadOptions() {
+        LoadOptions options = new LoadOptions(false);
+        options.threads = threads;
+        return options;
+    }
+
+
+    /**
+    * Loads the dataset.
+    */
+    protected Dataset loadDataset() throws Exception {
+        return new Dataset(datasetFile().getPath(), loadOptions());
+    }
+}
@@ -0,0 +1,29 @@
+# Builds and runs the JMH benchmarks. JMH_CLASSPATH must list the JMH jars
+# (jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3), e.g.
+#   JMH_CLASSPATH=$(echo ~/jmh/*.jar | tr ' ' ':') bash benchmarks/bench.sh
+# Any arguments are passed on to JMH, e.g. a benchmark name regex and
+# -p rows=1000000 to override a parameter.
+#
+# JMH does not accept benchmarks in the default package, so the sources are
+# copied into the "benchmarks" package before compiling. They are compiled
+# and run with the incubating vector module, which VectorBitsetCounter needs.
+set -e;
+if [ -z "${JMH_CLASSPATH}" ]; then
+    echo "Error: set JMH_CLASSPATH to the JMH jars." >&2;
+    exit 1;
+fi
+cd "$(dirname "$0")/..";
+BUILD_DIR=benchmarks/build;
+rm -rf "${BUILD_DIR}";
+mkdir -p "${BUILD_DIR}/src" "${BUILD_DIR}/classes";
+for SOURCE in *.java; do
+    { echo "package benchmarks;"; cat "${SOURCE}"; } > "${BUILD_DIR}/src/${SOURCE}";
+done
+cp benchmarks/*.java "${BUILD_DIR}/src/";
+VECTOR_MODULE="--add-modules jdk.incubator.vector";
+javac ${VECTOR_MODULE} -cp "${JMH_CLASSPATH}" \
+    -processorpath "${JMH_CLASSPATH}" \
+    -d "${BUILD_DIR}/classes" "${BUILD_DIR}"/src/*.java;
+java ${VECTOR_MODULE} -cp "${BUILD_DIR}/classes:${JMH_CLASSPATH}" \
+    org.openjdk.jmh.Main -jvmArgsAppend "${VECTOR_MODULE}" "$@";
+rm -rf "${BUILD_DIR}";
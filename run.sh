@@ -1,7 +1,14 @@
 rm -f *.class;
 javac RuleMiningMain.java;
+# The --simd kernel needs the incubating Vector API. Without it (or on a JDK
+# older than 16) it is not compiled, and --simd falls back to plain Java.
+javac --add-modules jdk.incubator.vector VectorBitsetCounter.java 2> /dev/null;
 DATASET_FILENAME="$1";
 MIN_SUP=$2;
 MIN_CONF=$3;
-java RuleMiningMain "${DATASET_FILENAME}" $MIN_SUP $MIN_CONF;
-rm -f *.class;
\ No newline at end of file
+JAVA_OPTIONS="";
+if [[ " ${*:4} " == *" --simd "* ]]; then
+    JAVA_OPTIONS="--add-modules jdk.incubator.vector";
+fi
+java $JAVA_OPTIONS RuleMiningMain "${DATASET_FILENAME}" $MIN_SUP $MIN_CONF "${@:4}";
+rm -f *.class;
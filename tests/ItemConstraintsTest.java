@@ -0,0 +1,98 @@
+import java.io.*;
+import java.util.*;
+
+/**
+* Checks of the item constraints (see ItemConstraints) on a small CSV file
+* whose items hold commas, run through the command line parsing of
+* InputParser the way RuleMiningMain does. Run by tests/test.sh; exits with
+* status 1 on the first failed check.
+*/
+public class ItemConstraintsTest {
+    private static final String ACCIDENTS =
+        "Cause of Death:\"ACCIDENTS, UNINTENTIONAL\"";
+
+
+    public static void main(String[] args) throws Exception {
+        File csv = File.createTempFile("constraints", ".csv");
+        csv.deleteOnExit();
+        PrintWriter writer = new PrintWriter(csv, "UTF-8");
+        for (int i = 0; i < 6; i++) {
+            writer.println("Year:2010,Sex:MALE," + ACCIDENTS);
+            writer.println("Year:2010,Sex:FEMALE,Cause of Death:DIABETES");
+        }
+        writer.close();
+
+        parsesQuotedItems();
+        requiresQuotedItem(csv);
+        rejectsUnknownItem();
+        System.out.println("ItemConstraintsTest: all checks passed");
+    }
+
+    //**************************************************************************
+    // PRIVATE METHODS
+    //**************************************************************************
+
+    private static void parsesQuotedItems() {
+        List<String> items = ItemConstraints.parseList(
+            "\"Cause of Death:ACCIDENTS, UNINTENTIONAL\",Sex:MALE");
+        check(items.size() == 2, "a quoted item with a comma is one item");
+        check(items.get(1).equals("Sex:MALE"), "the next item follows it");
+    }
+
+
+    /*
+    * --require with a quoted item that holds a comma keeps the itemsets and
+    * rules that hold it.
+    */
+    private static void requiresQuotedItem(File csv) throws Exception {
+        InputParser inputParser = new InputParser(new String[] {
+            csv.getPath(), "0.1", "0.5",
+            "--require=\"Cause of Death:ACCIDENTS, UNINTENTIONAL\""});
+        inputParser.validateAndParse(true);
+        Dataset dataset = inputParser.getDataset();
+        ItemConstraints constraints = inputParser.getConstraints();
+        check(constraints.requiredItems.size() == 1,
+              "--require holds one item");
+        int accidents = dataset.getDictionary().lookup(ACCIDENTS);
+        check(Arrays.equals(constraints.getRequiredItems(),
+                            new int[] {accidents}),
+              "the required item is bound to the item of the file");
+
+        Set<Itemset> itemsets =
+            constraints.filter(dataset.aprioriAlgorithm(0.1, 0.5));
+        check(itemsets.size() == 3, "3 itemsets hold the required item, " +
+              "not " + itemsets.size());
+        for (Itemset itemset : itemsets) {
+            check(itemset.contains(accidents),
+                  "every itemset holds the required item");
+        }
+        List<Rule_confidence> rules =
+            new RuleGenerator(dataset, 0.5, 1, 1, constraints)
+                .generate(itemsets);
+        check(!rules.isEmpty(), "rules hold the required item");
+    }
+
+
+    private static void rejectsUnknownItem() {
+        ItemDictionary dictionary = new ItemDictionary();
+        dictionary.encode(ACCIDENTS);
+        ItemConstraints constraints = new ItemConstraints();
+        constraints.requiredItems.addAll(ItemConstraints.parseList(
+            "Cause of Death:ACCIDENTS, UNINTENTIONAL"));
+        try {
+            constraints.bind(dictionary);
+            check(false, "an unknown required item is an error");
+        } catch (Exception e) {
+            check(e.getMessage().contains("Cause of Death:ACCIDENTS"),
+                  "the error names the unknown item: " + e.getMessage());
+        }
+    }
+
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            System.err.println("ItemConstraintsTest failed: " + description);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+# Builds and runs the checks in tests/. Only the classes the checks use are
+# compiled, as in run.sh, so the Vector API module is not needed.
+set -e;
+cd "$(dirname "$0")/..";
+BUILD_DIR=tests/build;
+rm -rf "${BUILD_DIR}";
+mkdir -p "${BUILD_DIR}";
+javac -sourcepath . -d "${BUILD_DIR}" tests/*.java;
+for TEST in tests/*Test.java; do
+    java -cp "${BUILD_DIR}" "$(basename "${TEST}" .java)";
+done
+rm -rf "${BUILD_DIR}";